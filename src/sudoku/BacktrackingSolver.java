@@ -0,0 +1,172 @@
+package sudoku;
+
+import java.util.Arrays;
+
+/**
+ * Brute force solver used to verify the boards. It searches depth first
+ * with an explicit stack, always continues with the empty cell which has
+ * the fewest allowed numbers and stops as soon as it finds the requested
+ * number of solutions.
+ * @author Ondrej Nebesky
+ */
+public class BacktrackingSolver implements SolverEngine {
+
+    private final SudokuUnits units;
+
+    /** board being solved */
+    private final int[] grid;
+    /** numbers used in every unit */
+    private final int[] unitMasks;
+    /** cell filled at every depth of the search */
+    private final int[] stackCell;
+    /** numbers which were not tried yet at every depth */
+    private final int[] stackMask;
+    /** copy of the first solution found */
+    private final int[] solution;
+
+    public BacktrackingSolver(SudokuUnits units) {
+        this.units = units;
+        grid = new int[units.cells];
+        unitMasks = new int[units.units.length];
+        // one more level for the full board
+        stackCell = new int[units.cells + 1];
+        stackMask = new int[units.cells + 1];
+        solution = new int[units.cells];
+    }
+
+    public BacktrackingSolver() {
+        this(SudokuUnits.STANDARD);
+    }
+
+    public SudokuUnits getUnits() {
+        return units;
+    }
+
+    public int countSolutions(int[] puzzle, int limit) {
+        return search(puzzle, limit);
+    }
+
+    public boolean solve(int[] puzzle) {
+        if (search(puzzle, 1) == 0) {
+            return false;
+        }
+        System.arraycopy(solution, 0, puzzle, 0, units.cells);
+        return true;
+    }
+
+    private int search(int[] puzzle, int limit) {
+        if (limit < 1 || !load(puzzle)) {
+            return 0;
+        }
+
+        int found = 0;
+        int depth = 0;
+        int cell, mask, bit;
+        boolean descend = true;
+        while (true) {
+            if (descend) {
+                cell = pickCell();
+                if (cell < 0) {
+                    // no empty cell left
+                    if (found++ == 0) {
+                        System.arraycopy(grid, 0, solution, 0, units.cells);
+                    }
+                    if (found == limit) {
+                        return found;
+                    }
+                    mask = 0;
+                } else {
+                    mask = allowed(cell);
+                }
+                stackCell[depth] = cell;
+                stackMask[depth] = mask;
+            }
+            mask = stackMask[depth];
+            if (mask == 0) {
+                // nothing left to try here, go one step back
+                if (depth == 0) {
+                    return found;
+                }
+                depth--;
+                remove(stackCell[depth]);
+                descend = false;
+                continue;
+            }
+            bit = mask & -mask;
+            stackMask[depth] = mask & ~bit;
+            place(stackCell[depth], bit);
+            depth++;
+            descend = true;
+        }
+    }
+
+    /**
+     * Copy the puzzle and check there are no collisions in it
+     */
+    private boolean load(int[] puzzle) {
+        Arrays.fill(unitMasks, 0);
+        Arrays.fill(grid, 0);
+        int bit;
+        for (int i = 0; i < units.cells; i++) {
+            if (puzzle[i] > 0) {
+                bit = 1 << (puzzle[i] - 1);
+                if ((allowed(i) & bit) == 0) {
+                    return false;
+                }
+                place(i, bit);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Empty cell with the fewest allowed numbers
+     * @return -1 when the board is full
+     */
+    private int pickCell() {
+        int best = -1, bestCount = Integer.MAX_VALUE;
+        int count;
+        for (int cell = 0; cell < units.cells; cell++) {
+            if (grid[cell] == 0) {
+                count = Integer.bitCount(allowed(cell));
+                if (count < bestCount) {
+                    best = cell;
+                    bestCount = count;
+                    if (count <= 1) {
+                        break;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private int allowed(int cell) {
+        int[] cellUnits = units.cellUnits[cell];
+        int mask = units.allCandidates & ~(unitMasks[cellUnits[0]] | unitMasks[cellUnits[1]] | unitMasks[cellUnits[2]]);
+        return units.plain ? mask : units.applyRules(cell, mask, unitMasks, grid);
+    }
+
+    private void place(int cell, int bit) {
+        int[] cellUnits = units.cellUnits[cell];
+        grid[cell] = Integer.numberOfTrailingZeros(bit) + 1;
+        unitMasks[cellUnits[0]] |= bit;
+        unitMasks[cellUnits[1]] |= bit;
+        unitMasks[cellUnits[2]] |= bit;
+        for (int u = 3; u < cellUnits.length; u++) {
+            unitMasks[cellUnits[u]] |= bit;
+        }
+    }
+
+    private void remove(int cell) {
+        int[] cellUnits = units.cellUnits[cell];
+        int bit = 1 << (grid[cell] - 1);
+        grid[cell] = 0;
+        unitMasks[cellUnits[0]] &= ~bit;
+        unitMasks[cellUnits[1]] &= ~bit;
+        unitMasks[cellUnits[2]] &= ~bit;
+        for (int u = 3; u < cellUnits.length; u++) {
+            unitMasks[cellUnits[u]] &= ~bit;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package sudoku;
+
+/**
+ * Fast brute force solver for the classic 9x9 board. Every number has one
+ * 81 bit mask of the cells where it is still possible, kept as three ints of
+ * 27 bits, one for every band of three rows. A placed number keeps the bit of
+ * its own cell. Naked and hidden singles are found with bitwise operations
+ * over all the numbers at once, the search branches on the cell with the
+ * fewest candidates and keeps a copy of the masks for every level.
+ * @author Ondrej Nebesky
+ */
+public class BitboardSolver implements SolverEngine {
+
+    private static final int BAND_MASK = (1 << 27) - 1;
+    /** ints in the state of one level: 9 numbers x 3 bands + solved cells */
+    private static final int STATE = 30;
+    private static final int SOLVED = 27;
+
+    /** peers of every cell for every band, without the cell itself */
+    private static final int[][] PEERS = new int[81][3];
+    /** cells of every unit for every band */
+    private static final int[][] UNITS = new int[27][3];
+
+    static {
+        SudokuUnits units = SudokuUnits.STANDARD;
+        for (int cell = 0; cell < 81; cell++) {
+            for (int peer : units.peers[cell]) {
+                PEERS[cell][peer / 27] |= 1 << (peer % 27);
+            }
+        }
+        for (int unit = 0; unit < 27; unit++) {
+            for (int cell : units.units[unit]) {
+                UNITS[unit][cell / 27] |= 1 << (cell % 27);
+            }
+        }
+    }
+
+    /** state of every level of the search */
+    private final int[] stack = new int[82 * STATE];
+    /** branching cell and numbers not tried yet at every level */
+    private final int[] branchCell = new int[82];
+    private final int[] branchNumbers = new int[82];
+    /** copy of the first solution found */
+    private final int[] solution = new int[81];
+
+    public SudokuUnits getUnits() {
+        return SudokuUnits.STANDARD;
+    }
+
+    public int countSolutions(int[] puzzle, int limit) {
+        return search(puzzle, limit);
+    }
+
+    public boolean solve(int[] puzzle) {
+        if (search(puzzle, 1) == 0) {
+            return false;
+        }
+        System.arraycopy(solution, 0, puzzle, 0, 81);
+        return true;
+    }
+
+    /**
+     * Count the solutions and fill the puzzle with the first one, both in
+     * one search
+     * @param puzzle numbers of the puzzle, 0 for empty cell
+     * @param limit the search stops after finding this many solutions
+     * @return number of solutions, at most limit
+     */
+    public int countAndSolve(int[] puzzle, int limit) {
+        int found = search(puzzle, limit);
+        if (found > 0) {
+            System.arraycopy(solution, 0, puzzle, 0, 81);
+        }
+        return found;
+    }
+
+    private int search(int[] puzzle, int limit) {
+        if (limit < 1 || !load(puzzle)) {
+            return 0;
+        }
+
+        int found = 0;
+        int level = 0;
+        int offset, cell, bit, number;
+        boolean descend = true;
+        while (true) {
+            offset = level * STATE;
+            if (descend) {
+                if (!propagate(offset)) {
+                    branchNumbers[level] = 0;
+                } else if (isSolved(offset)) {
+                    if (found++ == 0) {
+                        writeSolution(offset);
+                    }
+                    if (found == limit) {
+                        return found;
+                    }
+                    branchNumbers[level] = 0;
+                } else {
+                    cell = pickCell(offset);
+                    branchCell[level] = cell;
+                    branchNumbers[level] = candidates(offset, cell);
+                }
+            }
+
+            if (branchNumbers[level] == 0) {
+                // nothing left to try here, go one step back
+                if (level == 0) {
+                    return found;
+                }
+                level--;
+                descend = false;
+                continue;
+            }
+
+            // try the lowest number on the copy of this level
+            bit = branchNumbers[level] & -branchNumbers[level];
+            branchNumbers[level] &= ~bit;
+            number = Integer.numberOfTrailingZeros(bit);
+            System.arraycopy(stack, offset, stack, offset + STATE, STATE);
+            assign(offset + STATE, branchCell[level], number);
+            level++;
+            descend = true;
+        }
+    }
+
+    /**
+     * Set up the first level from the puzzle
+     * @return false if the givens collide
+     */
+    private boolean load(int[] puzzle) {
+        for (int i = 0; i < SOLVED; i++) {
+            stack[i] = BAND_MASK;
+        }
+        stack[SOLVED] = 0;
+        stack[SOLVED + 1] = 0;
+        stack[SOLVED + 2] = 0;
+        int number;
+        for (int cell = 0; cell < 81; cell++) {
+            if (puzzle[cell] > 0) {
+                number = puzzle[cell] - 1;
+                if ((stack[number * 3 + cell / 27] & (1 << (cell % 27))) == 0
+                        || (stack[SOLVED + cell / 27] & (1 << (cell % 27))) != 0) {
+                    return false;
+                }
+                assign(0, cell, number);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Place the number (0 - 8) to the cell
+     */
+    private void assign(int offset, int cell, int number) {
+        int band = cell / 27;
+        int bit = 1 << (cell % 27);
+        for (int n = 0; n < 9; n++) {
+            stack[offset + n * 3 + band] &= ~bit;
+        }
+        int[] peers = PEERS[cell];
+        int o = offset + number * 3;
+        stack[o] &= ~peers[0];
+        stack[o + 1] &= ~peers[1];
+        stack[o + 2] &= ~peers[2];
+        stack[o + band] |= bit;
+        stack[offset + SOLVED + band] |= bit;
+    }
+
+    /**
+     * Place all naked and hidden singles
+     * @return false if a contradiction was found
+     */
+    private boolean propagate(int offset) {
+        boolean changed = true;
+        int one, two, mask, unsolved, singles, bit, cell;
+        int m0, m1, m2;
+        while (changed) {
+            changed = false;
+
+            // naked singles, count the candidates of all cells in a band at once
+            for (int band = 0; band < 3; band++) {
+                one = 0;
+                two = 0;
+                for (int n = 0; n < 9; n++) {
+                    mask = stack[offset + n * 3 + band];
+                    two |= one & mask;
+                    one |= mask;
+                }
+                unsolved = ~stack[offset + SOLVED + band] & BAND_MASK;
+                if ((one & unsolved) != unsolved) {
+                    // a cell without candidates
+                    return false;
+                }
+                singles = one & ~two & unsolved;
+                while (singles != 0) {
+                    bit = singles & -singles;
+                    singles &= ~bit;
+                    cell = band * 27 + Integer.numberOfTrailingZeros(bit);
+                    for (int n = 0; n < 9; n++) {
+                        if ((stack[offset + n * 3 + band] & bit) != 0) {
+                            if ((stack[offset + SOLVED + band] & bit) == 0) {
+                                assign(offset, cell, n);
+                            }
+                            break;
+                        }
+                    }
+                    changed = true;
+                }
+            }
+            if (changed) {
+                continue;
+            }
+
+            // hidden singles, only one place for the number in the unit
+            for (int n = 0; n < 9; n++) {
+                m0 = stack[offset + n * 3];
+                m1 = stack[offset + n * 3 + 1];
+                m2 = stack[offset + n * 3 + 2];
+                for (int[] unit : UNITS) {
+                    int u0 = m0 & unit[0], u1 = m1 & unit[1], u2 = m2 & unit[2];
+                    int count = Integer.bitCount(u0) + Integer.bitCount(u1) + Integer.bitCount(u2);
+                    if (count == 0) {
+                        return false;
+                    }
+                    if (count == 1) {
+                        cell = u0 != 0 ? Integer.numberOfTrailingZeros(u0)
+                                : u1 != 0 ? 27 + Integer.numberOfTrailingZeros(u1)
+                                : 54 + Integer.numberOfTrailingZeros(u2);
+                        if ((stack[offset + SOLVED + cell / 27] & (1 << (cell % 27))) == 0) {
+                            assign(offset, cell, n);
+                            m0 = stack[offset + n * 3];
+                            m1 = stack[offset + n * 3 + 1];
+                            m2 = stack[offset + n * 3 + 2];
+                            changed = true;
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean isSolved(int offset) {
+        return stack[offset + SOLVED] == BAND_MASK
+                && stack[offset + SOLVED + 1] == BAND_MASK
+                && stack[offset + SOLVED + 2] == BAND_MASK;
+    }
+
+    /**
+     * Candidates of the cell as a mask of numbers 0 - 8
+     */
+    private int candidates(int offset, int cell) {
+        int band = cell / 27;
+        int bit = 1 << (cell % 27);
+        int mask = 0;
+        for (int n = 0; n < 9; n++) {
+            if ((stack[offset + n * 3 + band] & bit) != 0) {
+                mask |= 1 << n;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Unsolved cell with the fewest candidates
+     */
+    private int pickCell(int offset) {
+        int best = -1, bestCount = Integer.MAX_VALUE, count;
+        int unsolved, bit;
+        for (int band = 0; band < 3; band++) {
+            unsolved = ~stack[offset + SOLVED + band] & BAND_MASK;
+            while (unsolved != 0) {
+                bit = unsolved & -unsolved;
+                unsolved &= ~bit;
+                count = 0;
+                for (int n = 0; n < 9; n++) {
+                    if ((stack[offset + n * 3 + band] & bit) != 0) {
+                        count++;
+                    }
+                }
+                if (count < bestCount) {
+                    bestCount = count;
+                    best = band * 27 + Integer.numberOfTrailingZeros(bit);
+                    if (count == 2) {
+                        return best;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private void writeSolution(int offset) {
+        int mask, bit;
+        for (int n = 0; n < 9; n++) {
+            for (int band = 0; band < 3; band++) {
+                mask = stack[offset + n * 3 + band];
+                while (mask != 0) {
+                    bit = mask & -mask;
+                    mask &= ~bit;
+                    solution[band * 27 + Integer.numberOfTrailingZeros(bit)] = n + 1;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package sudoku;
+
+/**
+ * Cage combinations of the killer sudoku. Only the combinations of numbers
+ * giving the sum of the cage which contain the numbers placed in it and
+ * fit the candidates of its empty cells are possible, so the cells keep
+ * only the candidates which are in one of them. Every empty cell needs a
+ * candidate in the combination and every missing number of the
+ * combination a cell where it is a candidate.
+ * Boards without cages return at once.
+ * @author Ondrej Nebesky
+ */
+public class CageEngine {
+
+    private final SudokuUnits units;
+
+    public CageEngine(SudokuUnits units) {
+        this.units = units;
+    }
+
+    public SudokuUnits getUnits() {
+        return units;
+    }
+
+    /**
+     * @param board
+     * @return number of cages which removed a candidate
+     */
+    public int solve(SudokuBoard board) {
+        int found = 0;
+        int placed, allowed, rest, covered, mask;
+        boolean fits;
+        for (int cage = 0; cage < units.cages.length; cage++) {
+            placed = board.getCageMask(cage);
+            allowed = 0;
+            for (int combination : units.cageCombinations[cage]) {
+                if ((combination & placed) != placed) {
+                    continue;
+                }
+                rest = combination & ~placed;
+                covered = 0;
+                fits = true;
+                for (int cell : units.cages[cage]) {
+                    if (board.getNumber(cell) == 0) {
+                        mask = board.getCandidates(cell) & rest;
+                        fits &= mask != 0;
+                        covered |= mask;
+                    }
+                }
+                if (fits && covered == rest) {
+                    allowed |= rest;
+                }
+            }
+            fits = false;
+            for (int cell : units.cages[cage]) {
+                mask = board.getCandidates(cell);
+                if (board.getNumber(cell) == 0 && (mask & ~allowed) != 0) {
+                    board.setCandidates(cell, mask & allowed);
+                    fits = true;
+                }
+            }
+            if (fits) {
+                found++;
+            }
+        }
+        return found;
+    }
+}
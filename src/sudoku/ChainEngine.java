@@ -0,0 +1,397 @@
+package sudoku;
+
+import java.util.Arrays;
+
+/**
+ * Chains over the candidates of the board. A candidate is a node
+ * (cell * size + number - 1), the links between them are
+ * - strong, one of the two candidates has to be true: the only two
+ *   positions of a number in a unit or the only two candidates of a cell
+ * - weak, both can't be true: same number in cells which see each other or
+ *   two numbers of the same cell
+ * Searching from a candidate A which is assumed false, a strong link makes
+ * the other end true and a weak link from a true candidate makes the other
+ * end false. Reaching a true candidate T means A or T is true, so every
+ * candidate weakly linked to both of them is removed. Using only the links
+ * of one number this is an X-Chain, using all of them an alternating
+ * inference chain (AIC).
+ * Simple coloring splits the conjugate pairs of a number into two colors,
+ * one of which is true.
+ * Every search stops at the maximum length of the chain and when the time
+ * budget of the call runs out, so it never slows the generation down much.
+ * @author Ondrej Nebesky
+ */
+public class ChainEngine {
+
+    public static final int DEFAULT_MAX_LENGTH = 12;
+    public static final long DEFAULT_TIME_BUDGET = 2000000L;
+
+    private final SudokuUnits units;
+    private final int size;
+    private final int nodes;
+
+    /** longest chain in links */
+    private int maxLength = DEFAULT_MAX_LENGTH;
+    /** nanoseconds one call may take */
+    private long timeBudget = DEFAULT_TIME_BUDGET;
+
+    /** strong links of every node, one per unit of the cell and one in the cell */
+    private final int[] strong;
+    private final int maxStrong;
+    private final int[] strongCount;
+    /** candidate masks of the empty cells taken at the start of the call */
+    private final int[] candidates;
+
+    // search state, stamps avoid clearing the arrays for every start
+    private final int[] trueStamp;
+    private final int[] falseStamp;
+    private int stamp = 0;
+    /** queue of nodes, negative for the false ones (-node - 1) */
+    private final int[] queue;
+    private final int[] queueDepth;
+
+    /** color of every cell in simple coloring, 0 for none */
+    private final int[] color;
+    private final int[] component;
+    /** which colors see the cell */
+    private final int[] seen;
+
+    public ChainEngine(SudokuUnits units) {
+        this.units = units;
+        size = units.size;
+        nodes = units.cells * size;
+        int most = 0;
+        for (int[] cellUnits : units.cellUnits) {
+            most = Math.max(most, cellUnits.length);
+        }
+        maxStrong = most + 1;
+        strong = new int[nodes * maxStrong];
+        strongCount = new int[nodes];
+        candidates = new int[units.cells];
+        trueStamp = new int[nodes];
+        falseStamp = new int[nodes];
+        queue = new int[2 * nodes];
+        queueDepth = new int[2 * nodes];
+        color = new int[units.cells];
+        component = new int[units.cells];
+        seen = new int[units.cells];
+    }
+
+    public SudokuUnits getUnits() {
+        return units;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Longest chain which is searched, in links
+     * @param maxLength
+     */
+    public void setMaxLength(int maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    public long getTimeBudget() {
+        return timeBudget;
+    }
+
+    /**
+     * Time one call of the technique may take, in nanoseconds, 0 for no
+     * limit (the result doesn't depend on the speed of the machine then)
+     * @param timeBudget
+     */
+    public void setTimeBudget(long timeBudget) {
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * Simple coloring for all the numbers. A color with two cells which see
+     * each other is false, a cell which sees both colors can't have the
+     * number.
+     * @param board
+     * @return number of colorings which removed a candidate
+     */
+    public int solveSimpleColoring(SudokuBoard board) {
+        int found = 0;
+        for (int number = 1; number <= size; number++) {
+            if (colorNumber(board, number)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private boolean colorNumber(SudokuBoard board, int number) {
+        int bit = SudokuField.candidateBit(number);
+        Arrays.fill(color, 0);
+        int components = 0;
+        int head, tail, cell, other, positions;
+        boolean removed = false;
+
+        for (int start = 0; start < units.cells; start++) {
+            if (color[start] != 0 || !hasConjugate(board, start, number)) {
+                continue;
+            }
+            // color the chain of conjugate pairs, colors are 1 and -1
+            components++;
+            head = 0;
+            tail = 0;
+            color[start] = 1;
+            component[start] = components;
+            queue[tail++] = start;
+            while (head < tail) {
+                cell = queue[head++];
+                for (int unit : units.cellUnits[cell]) {
+                    positions = board.getPositionMask(unit, number);
+                    if (Integer.bitCount(positions) != 2) {
+                        continue;
+                    }
+                    for (; positions != 0; positions &= positions - 1) {
+                        other = units.units[unit][Integer.numberOfTrailingZeros(positions)];
+                        if (other != cell && color[other] == 0) {
+                            color[other] = -color[cell];
+                            component[other] = components;
+                            queue[tail++] = other;
+                        }
+                    }
+                }
+            }
+
+            // mark the cells seen by every color, bit 1 positive, bit 2 negative
+            int wrong = 0;
+            for (int i = 0; i < tail; i++) {
+                int seenBy = color[queue[i]] > 0 ? 1 : 2;
+                for (int peer : units.peers[queue[i]]) {
+                    if (component[peer] == components && color[peer] == color[queue[i]]) {
+                        // color wrap, two cells of the same color see each other
+                        wrong = color[peer];
+                    }
+                    seen[peer] |= seenBy;
+                }
+            }
+            if (wrong != 0) {
+                for (int i = 0; i < tail; i++) {
+                    if (color[queue[i]] == wrong) {
+                        board.removeCandidate(queue[i], number);
+                        removed = true;
+                    }
+                }
+            } else {
+                // color trap, a cell outside of the chain sees both colors
+                for (cell = 0; cell < units.cells; cell++) {
+                    if (seen[cell] == 3 && board.getNumber(cell) == 0 && (board.getCandidates(cell) & bit) != 0
+                            && !(component[cell] == components && color[cell] != 0)) {
+                        board.removeCandidate(cell, number);
+                        removed = true;
+                    }
+                }
+            }
+            Arrays.fill(seen, 0);
+        }
+        return removed;
+    }
+
+    private boolean hasConjugate(SudokuBoard board, int cell, int number) {
+        if (board.getNumber(cell) != 0 || (board.getCandidates(cell) & SudokuField.candidateBit(number)) == 0) {
+            return false;
+        }
+        for (int unit : units.cellUnits[cell]) {
+            if (Integer.bitCount(board.getPositionMask(unit, number)) == 2) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * X-Chains, chains using only the links of one number
+     * @param board
+     * @return number of chains which removed a candidate
+     */
+    public int solveXChains(SudokuBoard board) {
+        return solveChains(board, true);
+    }
+
+    /**
+     * Alternating inference chains over all the numbers
+     * @param board
+     * @return number of chains which removed a candidate
+     */
+    public int solveAIC(SudokuBoard board) {
+        return solveChains(board, false);
+    }
+
+    private int solveChains(SudokuBoard board, boolean singleNumber) {
+        long deadline = System.nanoTime() + timeBudget;
+        collectLinks(board, singleNumber);
+
+        int found = 0;
+        for (int start = 0; start < nodes; start++) {
+            // the chain starts with a strong link
+            if (strongCount[start] == 0 || !isCandidate(start)) {
+                continue;
+            }
+            if (timeBudget > 0 && System.nanoTime() > deadline) {
+                break;
+            }
+            if (search(board, start, singleNumber)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Take the candidates and strong links from the board
+     */
+    private void collectLinks(SudokuBoard board, boolean singleNumber) {
+        for (int cell = 0; cell < units.cells; cell++) {
+            candidates[cell] = board.getNumber(cell) == 0 ? board.getCandidates(cell) : 0;
+        }
+        Arrays.fill(strongCount, 0);
+        int node, positions, other;
+        for (int cell = 0; cell < units.cells; cell++) {
+            for (int c = candidates[cell]; c != 0; c &= c - 1) {
+                int n = Integer.numberOfTrailingZeros(c);
+                node = cell * size + n;
+                // conjugate pairs
+                for (int unit : units.cellUnits[cell]) {
+                    positions = board.getPositionMask(unit, n + 1);
+                    if (Integer.bitCount(positions) != 2) {
+                        continue;
+                    }
+                    for (; positions != 0; positions &= positions - 1) {
+                        other = units.units[unit][Integer.numberOfTrailingZeros(positions)];
+                        if (other != cell) {
+                            addStrong(node, other * size + n);
+                        }
+                    }
+                }
+                // bivalue cell
+                if (!singleNumber && Integer.bitCount(candidates[cell]) == 2) {
+                    addStrong(node, cell * size + Integer.numberOfTrailingZeros(candidates[cell] & ~(1 << n)));
+                }
+            }
+        }
+    }
+
+    private void addStrong(int node, int other) {
+        for (int i = 0; i < strongCount[node]; i++) {
+            if (strong[node * maxStrong + i] == other) {
+                return;
+            }
+        }
+        strong[node * maxStrong + strongCount[node]++] = other;
+    }
+
+    /**
+     * Breadth first search of the implications of the start being false
+     * @return true if a candidate was removed
+     */
+    private boolean search(SudokuBoard board, int start, boolean singleNumber) {
+        stamp++;
+        int head = 0, tail = 0;
+        int entry, node, depth, cell, number, other;
+        boolean removed = false;
+
+        falseStamp[start] = stamp;
+        queue[tail] = -start - 1;
+        queueDepth[tail++] = 0;
+        while (head < tail) {
+            entry = queue[head];
+            depth = queueDepth[head++];
+            if (depth >= maxLength) {
+                continue;
+            }
+            if (entry < 0) {
+                // false node, the strong links are true
+                node = -entry - 1;
+                for (int i = 0; i < strongCount[node]; i++) {
+                    other = strong[node * maxStrong + i];
+                    if (trueStamp[other] == stamp) {
+                        continue;
+                    }
+                    trueStamp[other] = stamp;
+                    queue[tail] = other;
+                    queueDepth[tail++] = depth + 1;
+                    if (other != start && eliminate(board, start, other)) {
+                        removed = true;
+                    }
+                }
+            } else {
+                // true node, all the weak links are false
+                node = entry;
+                cell = node / size;
+                number = node % size;
+                if (!singleNumber) {
+                    for (int c = candidates[cell] & ~(1 << number); c != 0; c &= c - 1) {
+                        other = cell * size + Integer.numberOfTrailingZeros(c);
+                        if (falseStamp[other] != stamp) {
+                            falseStamp[other] = stamp;
+                            queue[tail] = -other - 1;
+                            queueDepth[tail++] = depth + 1;
+                        }
+                    }
+                }
+                for (int peer : units.peers[cell]) {
+                    if ((candidates[peer] & (1 << number)) != 0) {
+                        other = peer * size + number;
+                        if (falseStamp[other] != stamp) {
+                            falseStamp[other] = stamp;
+                            queue[tail] = -other - 1;
+                            queueDepth[tail++] = depth + 1;
+                        }
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * The start or the end is true, remove the candidates which are weakly
+     * linked to both
+     */
+    private boolean eliminate(SudokuBoard board, int start, int end) {
+        int startCell = start / size, startNumber = start % size;
+        int endCell = end / size, endNumber = end % size;
+        boolean removed = false;
+        if (startCell == endCell) {
+            // the cell is one of the two numbers
+            int keep = (1 << startNumber) | (1 << endNumber);
+            if ((candidates[startCell] & ~keep) != 0) {
+                candidates[startCell] &= keep;
+                board.setCandidates(startCell, board.getCandidates(startCell) & keep);
+                removed = true;
+            }
+        } else if (startNumber == endNumber) {
+            // the number is in one of the two cells
+            for (int cell : units.peers[startCell]) {
+                if (cell != endCell && (candidates[cell] & (1 << startNumber)) != 0 && units.isPeer(cell, endCell)) {
+                    candidates[cell] &= ~(1 << startNumber);
+                    board.removeCandidate(cell, startNumber + 1);
+                    removed = true;
+                }
+            }
+        } else if (units.isPeer(startCell, endCell)) {
+            // the end number can't be in the start cell and the other way round
+            if ((candidates[startCell] & (1 << endNumber)) != 0) {
+                candidates[startCell] &= ~(1 << endNumber);
+                board.removeCandidate(startCell, endNumber + 1);
+                removed = true;
+            }
+            if ((candidates[endCell] & (1 << startNumber)) != 0) {
+                candidates[endCell] &= ~(1 << startNumber);
+                board.removeCandidate(endCell, startNumber + 1);
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    private boolean isCandidate(int node) {
+        return (candidates[node / size] & (1 << (node % size))) != 0;
+    }
+}
@@ -0,0 +1,325 @@
+package sudoku;
+
+/**
+ * Exact cover solver using Knuth's Dancing Links (Algorithm X). Every
+ * candidate (cell, number) is a row of the matrix which covers the cell and
+ * the number in every unit of the cell, so the classic board has 729 rows
+ * and 324 columns. The whole matrix is built once in flat int arrays, every
+ * solve only covers and uncovers the columns, so it allocates nothing.
+ * Extra units of a variant are columns like the others and the numbers
+ * not allowed in a cell have no row. Killer cages are not an exact cover,
+ * use the BacktrackingSolver for them.
+ * @author Ondrej Nebesky
+ */
+public class DancingLinksSolver implements SolverEngine {
+
+    private final SudokuUnits units;
+
+    /** number of columns, the root node has this index */
+    private final int columns;
+    private final int root;
+
+    // links of the nodes, columns headers first, then the root, then rows
+    private final int[] left;
+    private final int[] right;
+    private final int[] up;
+    private final int[] down;
+    /** column header of the node */
+    private final int[] column;
+    /** matrix row of the node, cell * size + number - 1 */
+    private final int[] matrixRow;
+    /** number of nodes in every column */
+    private final int[] columnSize;
+    /** first node of every matrix row, -1 for a number not allowed in the cell */
+    private final int[] rowStart;
+
+    /** rows of the givens which were selected before the search */
+    private final int[] givens;
+    private int givensCount;
+    /** column covered and row tried at every level of the search */
+    private final int[] levelColumn;
+    private final int[] levelRow;
+    /** copy of the first solution found */
+    private final int[] solution;
+
+    public DancingLinksSolver(SudokuUnits units) {
+        this.units = units;
+        int size = units.size;
+        int rows = units.cells * size;
+        if (units.cages.length > 0) {
+            throw new IllegalArgumentException("Killer cages can't be solved by dancing links");
+        }
+        int nodes = 0;
+        for (int cell = 0; cell < units.cells; cell++) {
+            nodes += Integer.bitCount(units.cellMasks[cell]) * (units.cellUnits[cell].length + 1);
+        }
+
+        columns = units.cells + units.units.length * size;
+        root = columns;
+        nodes += columns + 1;
+
+        left = new int[nodes];
+        right = new int[nodes];
+        up = new int[nodes];
+        down = new int[nodes];
+        column = new int[nodes];
+        matrixRow = new int[nodes];
+        columnSize = new int[columns];
+        rowStart = new int[rows];
+
+        givens = new int[units.cells];
+        levelColumn = new int[units.cells + 1];
+        levelRow = new int[units.cells + 1];
+        solution = new int[units.cells];
+
+        // headers in a circular list with the root
+        for (int c = 0; c <= columns; c++) {
+            left[c] = c == 0 ? root : c - 1;
+            right[c] = c == root ? 0 : c + 1;
+            up[c] = c;
+            down[c] = c;
+            column[c] = c;
+        }
+
+        int node = columns + 1;
+        int first;
+        for (int cell = 0; cell < units.cells; cell++) {
+            for (int number = 0; number < size; number++) {
+                int row = cell * size + number;
+                if ((units.cellMasks[cell] & (1 << number)) == 0) {
+                    rowStart[row] = -1;
+                    continue;
+                }
+                first = node;
+                rowStart[row] = first;
+                appendNode(node++, cell, row, first);
+                for (int unit : units.cellUnits[cell]) {
+                    appendNode(node++, units.cells + unit * size + number, row, first);
+                }
+            }
+        }
+    }
+
+    public DancingLinksSolver() {
+        this(SudokuUnits.STANDARD);
+    }
+
+    /**
+     * Add node to the bottom of the column and to the end of its row
+     */
+    private void appendNode(int node, int col, int row, int first) {
+        column[node] = col;
+        matrixRow[node] = row;
+        up[node] = up[col];
+        down[node] = col;
+        down[up[col]] = node;
+        up[col] = node;
+        columnSize[col]++;
+
+        if (node == first) {
+            left[node] = node;
+            right[node] = node;
+        } else {
+            left[node] = left[first];
+            right[node] = first;
+            right[left[first]] = node;
+            left[first] = node;
+        }
+    }
+
+    public SudokuUnits getUnits() {
+        return units;
+    }
+
+    public int countSolutions(int[] puzzle, int limit) {
+        return search(puzzle, limit);
+    }
+
+    public boolean solve(int[] puzzle) {
+        if (search(puzzle, 1) == 0) {
+            return false;
+        }
+        System.arraycopy(solution, 0, puzzle, 0, units.cells);
+        return true;
+    }
+
+    private int search(int[] puzzle, int limit) {
+        int found = 0;
+        if (limit >= 1 && selectGivens(puzzle)) {
+            found = searchMatrix(puzzle, limit);
+        }
+        // return the matrix to its original state
+        int node;
+        while (givensCount > 0) {
+            node = givens[--givensCount];
+            unselectRow(node);
+            uncover(column[node]);
+        }
+        return found;
+    }
+
+    /**
+     * Select the rows of the numbers given in the puzzle
+     * @return false when the givens collide
+     */
+    private boolean selectGivens(int[] puzzle) {
+        givensCount = 0;
+        int node;
+        for (int cell = 0; cell < units.cells; cell++) {
+            if (puzzle[cell] > 0) {
+                node = rowStart[cell * units.size + puzzle[cell] - 1];
+                if (node < 0) {
+                    return false;
+                }
+                // every column of the row has to be still available
+                int j = node;
+                do {
+                    if (left[right[column[j]]] != column[j]) {
+                        return false;
+                    }
+                    j = right[j];
+                } while (j != node);
+                selectRow(node);
+                givens[givensCount++] = node;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Algorithm X with an explicit stack instead of recursion
+     */
+    private int searchMatrix(int[] puzzle, int limit) {
+        int found = 0;
+        int level = 0;
+        int col, row;
+        boolean descend = true;
+        while (true) {
+            if (descend) {
+                if (right[root] == root) {
+                    // all columns covered, this is a solution
+                    if (found++ == 0) {
+                        writeSolution(puzzle, level);
+                    }
+                    if (found == limit) {
+                        unwind(level);
+                        return found;
+                    }
+                    if (level == 0) {
+                        return found;
+                    }
+                    level--;
+                    unselectRow(levelRow[level]);
+                    levelRow[level] = down[levelRow[level]];
+                } else {
+                    col = chooseColumn();
+                    cover(col);
+                    levelColumn[level] = col;
+                    levelRow[level] = down[col];
+                }
+            }
+
+            row = levelRow[level];
+            if (row == levelColumn[level]) {
+                // no more rows in this column, go one step back
+                uncover(levelColumn[level]);
+                if (level == 0) {
+                    return found;
+                }
+                level--;
+                unselectRow(levelRow[level]);
+                levelRow[level] = down[levelRow[level]];
+                descend = false;
+                continue;
+            }
+            // cover the rest of the row and continue with the next level
+            for (int j = right[row]; j != row; j = right[j]) {
+                cover(column[j]);
+            }
+            level++;
+            descend = true;
+        }
+    }
+
+    /**
+     * Undo all the levels of the search
+     */
+    private void unwind(int level) {
+        while (level > 0) {
+            level--;
+            unselectRow(levelRow[level]);
+            uncover(levelColumn[level]);
+        }
+    }
+
+    /**
+     * Column with the fewest rows
+     */
+    private int chooseColumn() {
+        int best = right[root];
+        for (int c = right[best]; c != root; c = right[c]) {
+            if (columnSize[c] < columnSize[best]) {
+                best = c;
+                if (columnSize[c] <= 1) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    private void writeSolution(int[] puzzle, int level) {
+        for (int cell = 0; cell < units.cells; cell++) {
+            solution[cell] = puzzle[cell];
+        }
+        int row;
+        for (int i = 0; i < level; i++) {
+            row = matrixRow[levelRow[i]];
+            solution[row / units.size] = row % units.size + 1;
+        }
+    }
+
+    /**
+     * Cover all the columns of the row
+     */
+    private void selectRow(int node) {
+        cover(column[node]);
+        for (int j = right[node]; j != node; j = right[j]) {
+            cover(column[j]);
+        }
+    }
+
+    /**
+     * Uncover the columns of the row except of the column of the node, which
+     * is covered by the search level itself
+     */
+    private void unselectRow(int node) {
+        for (int j = left[node]; j != node; j = left[j]) {
+            uncover(column[j]);
+        }
+    }
+
+    private void cover(int col) {
+        right[left[col]] = right[col];
+        left[right[col]] = left[col];
+        for (int i = down[col]; i != col; i = down[i]) {
+            for (int j = right[i]; j != i; j = right[j]) {
+                up[down[j]] = up[j];
+                down[up[j]] = down[j];
+                columnSize[column[j]]--;
+            }
+        }
+    }
+
+    private void uncover(int col) {
+        for (int i = up[col]; i != col; i = up[i]) {
+            for (int j = left[i]; j != i; j = left[j]) {
+                columnSize[column[j]]++;
+                down[up[j]] = j;
+                up[down[j]] = j;
+            }
+        }
+        right[left[col]] = col;
+        left[right[col]] = col;
+    }
+}
@@ -0,0 +1,26 @@
+package sudoku;
+
+import java.util.Random;
+
+/**
+ * Sudoku X, every number is exactly once on both diagonals too.
+ * @author Ondrej Nebesky
+ */
+public class DiagonalConstraint implements SudokuConstraint {
+
+    public void addTo(VariantLayout layout) {
+        int size = layout.getSize();
+        int[] main = new int[size];
+        int[] anti = new int[size];
+        for (int i = 0; i < size; i++) {
+            main[i] = i * size + i;
+            anti[i] = i * size + size - 1 - i;
+        }
+        layout.addUnit(main);
+        layout.addUnit(anti);
+    }
+
+    public SudokuConstraint forSolution(SudokuUnits units, int[] solution, Random random) {
+        return this;
+    }
+}
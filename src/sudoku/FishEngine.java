@@ -0,0 +1,96 @@
+package sudoku;
+
+/**
+ * Basic fish for one number: X-Wing (2), Swordfish (3) and Jellyfish (4).
+ * If the number is a candidate in size rows only inside the same size
+ * columns, one of these rows has it in every column, so it is removed from
+ * the rest of the columns. The same works with rows and columns swapped.
+ * The position mask of a row has one bit for every column and the other
+ * way round, so the base lines are combined using the same combination
+ * tables as the subsets.
+ * @author Ondrej Nebesky
+ */
+public class FishEngine {
+
+    public static final int MAX_SIZE = 4;
+
+    private final SudokuUnits units;
+    /** combinations of the lines for every fish size and number of lines */
+    private final int[][][] combinations;
+    /** positions of the number in the base lines which may be used */
+    private final int[] masks;
+    /** index of the packed base line */
+    private final int[] lines;
+
+    public FishEngine(SudokuUnits units) {
+        this.units = units;
+        masks = new int[units.size];
+        lines = new int[units.size];
+        combinations = SubsetEngine.createCombinationTables(units.size);
+    }
+
+    public SudokuUnits getUnits() {
+        return units;
+    }
+
+    /**
+     * Find all fish of given size for all the numbers
+     * @param board
+     * @param size 2 - 4
+     * @return number of fish which removed a candidate
+     */
+    public int solve(SudokuBoard board, int size) {
+        int found = 0;
+        for (int number = 1; number <= units.size; number++) {
+            // rows are units 0 - size-1, columns follow
+            found += solve(board, number, size, 0, units.size);
+            found += solve(board, number, size, units.size, 0);
+        }
+        return found;
+    }
+
+    private int solve(SudokuBoard board, int number, int size, int baseUnits, int coverUnits) {
+        int bases = 0;
+        int mask;
+        for (int line = 0; line < units.size; line++) {
+            mask = board.getPositionMask(baseUnits + line, number);
+            if (mask != 0 && Integer.bitCount(mask) <= size) {
+                lines[bases] = line;
+                masks[bases++] = mask;
+            }
+        }
+        if (bases < size) {
+            return 0;
+        }
+
+        int found = 0;
+        int union, rest, cover, baseLines;
+        boolean removed;
+        for (int combination : combinations[size][bases]) {
+            union = 0;
+            for (int c = combination; c != 0; c &= c - 1) {
+                union |= masks[Integer.numberOfTrailingZeros(c)];
+            }
+            if (Integer.bitCount(union) != size) {
+                continue;
+            }
+            removed = false;
+            baseLines = SubsetEngine.unpack(combination, lines);
+            for (int u = union; u != 0; u &= u - 1) {
+                cover = coverUnits + Integer.numberOfTrailingZeros(u);
+                for (rest = board.getPositionMask(cover, number) & ~baseLines; rest != 0; rest &= rest - 1) {
+                    board.removeCandidate(units.units[cover][Integer.numberOfTrailingZeros(rest)], number);
+                    removed = true;
+                }
+            }
+            if (removed) {
+                found++;
+                // some base lines may have lost positions too
+                for (int j = 0; j < bases; j++) {
+                    masks[j] = board.getPositionMask(baseUnits + lines[j], number);
+                }
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,92 @@
+package sudoku;
+
+/**
+ * Immutable result of generating a single puzzle: the puzzle, its solution,
+ * the difficulty rating and the time it took.
+ * @author Ondrej Nebesky
+ */
+public final class GeneratedPuzzle {
+
+    private final SudokuUnits units;
+    private final byte[] puzzle;
+    private final byte[] solution;
+    private final int difficulty;
+    private final long durationInNanos;
+
+    public GeneratedPuzzle(SudokuBoard puzzle, SudokuBoard solution, int difficulty, long durationInNanos) {
+        this.units = puzzle.getUnits();
+        this.puzzle = toArray(puzzle);
+        this.solution = toArray(solution);
+        this.difficulty = difficulty;
+        this.durationInNanos = durationInNanos;
+    }
+
+    private static byte[] toArray(SudokuBoard board) {
+        byte[] numbers = new byte[board.getUnits().cells];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = (byte) board.getNumber(i);
+        }
+        return numbers;
+    }
+
+    public SudokuUnits getUnits() {
+        return units;
+    }
+
+    /**
+     * Number given in the puzzle
+     * @param position index of the cell
+     * @return 0 for empty cell
+     */
+    public int getNumber(int position) {
+        return puzzle[position];
+    }
+
+    public int getSolution(int position) {
+        return solution[position];
+    }
+
+    /**
+     * Rating of the returned puzzle, SudokuLogic.ratePuzzle() gives the same
+     * for it unless the chains ran out of their time budget
+     * @return
+     */
+    public int getDifficulty() {
+        return difficulty;
+    }
+
+    public long getDurationInNanos() {
+        return durationInNanos;
+    }
+
+    /**
+     * Create a new board with the numbers of the puzzle
+     * @return
+     */
+    public SudokuBoard toBoard() {
+        SudokuBoard board = new SudokuBoard(units);
+        for (int i = 0; i < puzzle.length; i++) {
+            board.setNumber(i, puzzle[i]);
+        }
+        board.markGeneratedFields();
+        return board;
+    }
+
+    public SudokuBoard toSolutionBoard() {
+        SudokuBoard board = new SudokuBoard(units);
+        for (int i = 0; i < solution.length; i++) {
+            board.setNumber(i, solution[i]);
+        }
+        board.markGeneratedFields();
+        return board;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder output = new StringBuilder(puzzle.length);
+        for (byte number : puzzle) {
+            output.append(number == 0 ? '.' : Character.forDigit(number, 36));
+        }
+        return output.toString();
+    }
+}
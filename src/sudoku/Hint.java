@@ -0,0 +1,109 @@
+package sudoku;
+
+/**
+ * Immutable result of SudokuLogic.nextHint(): the next number which can be
+ * placed, the hardest technique needed to find it and the candidates which
+ * had to be removed first, or a cell without any possible number.
+ * @author Ondrej Nebesky
+ */
+public final class Hint {
+
+    /** the number can be placed to the cell */
+    public static final int PLACEMENT = 1;
+    /** no number fits into the empty cell, some number on the board is wrong */
+    public static final int CONTRADICTION = 2;
+
+    private final SudokuUnits units;
+    private final int type;
+    private final String technique;
+    private final int level;
+    private final int position;
+    private final int number;
+    private final int[] eliminatedCells;
+    private final int[] eliminatedMasks;
+
+    public Hint(SudokuUnits units, int type, String technique, int level, int position, int number,
+            int[] eliminatedCells, int[] eliminatedMasks) {
+        this.units = units;
+        this.type = type;
+        this.technique = technique;
+        this.level = level;
+        this.position = position;
+        this.number = number;
+        this.eliminatedCells = eliminatedCells.clone();
+        this.eliminatedMasks = eliminatedMasks.clone();
+    }
+
+    /**
+     * @return PLACEMENT or CONTRADICTION
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Name of the hardest technique needed, null for a contradiction
+     * @return
+     */
+    public String getTechnique() {
+        return technique;
+    }
+
+    /**
+     * Level of the technique, see TechniqueScheduler
+     * @return
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Cell of the hint
+     * @return index of the cell, see SudokuUnits
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * @return number to place, 0 for a contradiction
+     */
+    public int getNumber() {
+        return number;
+    }
+
+    /**
+     * Number of cells which lost some candidates before the number could
+     * be placed
+     * @return
+     */
+    public int getEliminationCount() {
+        return eliminatedCells.length;
+    }
+
+    public int getEliminatedCell(int i) {
+        return eliminatedCells[i];
+    }
+
+    /**
+     * Candidates removed from the i-th cell
+     * @param i
+     * @return candidate mask
+     */
+    public int getEliminatedMask(int i) {
+        return eliminatedMasks[i];
+    }
+
+    @Override
+    public String toString() {
+        String cell = "r" + (units.rowOf[position] + 1) + "c" + (units.colOf[position] + 1);
+        if (type == CONTRADICTION) {
+            return "No number fits into " + cell + ", some number on the board is wrong";
+        }
+        String result = cell + " = " + number + " (" + technique;
+        if (eliminatedCells.length > 0) {
+            result += " after removing candidates from " + eliminatedCells.length + " cells";
+        }
+        return result + ")";
+    }
+}
@@ -0,0 +1,215 @@
+package sudoku;
+
+/**
+ * Finds the next number the player can place. The numbers of the player's
+ * board are copied to a board of its own with all the allowed candidates,
+ * between the calls only the changed cells and their peers are updated.
+ * If no cell has a single candidate and no number a single position there,
+ * the techniques are applied on a work copy, easiest first, until there is
+ * one. The hint is always a number to place together with the hardest
+ * technique which was needed for it.
+ * The eliminations on the work copy stay valid while the player only adds
+ * numbers, so they are kept between the calls and the expensive techniques
+ * don't run again after every key. Changing or removing a number throws
+ * them away. For the same reason a search which ran out of time continues
+ * in the next call.
+ * @author Ondrej Nebesky
+ */
+public class HintEngine {
+
+    private final SudokuUnits units;
+    private final TechniqueScheduler scheduler;
+    /** ids of the singles in the scheduler, the rest are tried in step() */
+    private final int singleCandidate;
+    private final int singlePosition;
+    /** numbers of the player with the candidates allowed by them */
+    private final SudokuBoard base;
+    private boolean baseValid = false;
+    /** base with the eliminations of the techniques */
+    private final SudokuBoard work;
+    private boolean workValid = false;
+    /** hardest technique used on the work board, -1 for none */
+    private int hardest = -1;
+    /** result of the last call, returned again if nothing changed */
+    private Hint lastHint;
+    private boolean lastHintValid = false;
+    private final int[] changed;
+
+    public HintEngine(SudokuUnits units, TechniqueScheduler scheduler, int singleCandidate, int singlePosition) {
+        this.units = units;
+        this.scheduler = scheduler;
+        this.singleCandidate = singleCandidate;
+        this.singlePosition = singlePosition;
+        base = new SudokuBoard(units);
+        work = new SudokuBoard(units);
+        changed = new int[units.cells];
+    }
+
+    public SudokuUnits getUnits() {
+        return units;
+    }
+
+    /**
+     * @param board numbers of the player, candidates of it are not used
+     * @param maxLevel hardest level of the techniques which may be used
+     * @param timeBudget nanoseconds, checked between the techniques
+     * @return null if the board is full, the techniques can't find anything
+     * or the time is over
+     */
+    public Hint nextHint(SudokuBoard board, int maxLevel, long timeBudget) {
+        long deadline = System.nanoTime() + timeBudget;
+        if (!synchronize(board) && lastHintValid) {
+            return lastHint;
+        }
+        lastHint = null;
+        lastHintValid = true;
+        if (base.isFullBoard()) {
+            return null;
+        }
+
+        lastHint = findSingle(base, -1);
+        if (lastHint != null) {
+            return lastHint;
+        }
+        if (!workValid) {
+            base.copyTo(work);
+            hardest = -1;
+            workValid = true;
+        }
+        int technique;
+        while (true) {
+            lastHint = findSingle(work, hardest);
+            if (lastHint != null) {
+                return lastHint;
+            }
+            // singles have level 0
+            technique = scheduler.step(work, 1, maxLevel);
+            if (technique < 0) {
+                return null;
+            }
+            if (hardest < 0 || isHarder(technique, hardest)) {
+                hardest = technique;
+            }
+            if (System.nanoTime() > deadline) {
+                // continue with the work board next time
+                lastHintValid = false;
+                return null;
+            }
+        }
+    }
+
+    private boolean isHarder(int technique, int other) {
+        int level = scheduler.getTechniqueLevel(technique);
+        int otherLevel = scheduler.getTechniqueLevel(other);
+        return level > otherLevel
+                || (level == otherLevel && scheduler.getTechniqueWeight(technique) > scheduler.getTechniqueWeight(other));
+    }
+
+    /**
+     * Copy the numbers of the board and update the candidates of the
+     * changed cells and their peers
+     * @return true if some number changed
+     */
+    private boolean synchronize(SudokuBoard board) {
+        int count = 0;
+        int number;
+        for (int i = 0; i < units.cells; i++) {
+            number = board.getNumber(i);
+            if (base.getNumber(i) != number) {
+                if (base.getNumber(i) != 0) {
+                    // the eliminations may depend on the old number
+                    workValid = false;
+                }
+                base.setNumber(i, number);
+                changed[count++] = i;
+            }
+        }
+        if (!baseValid || count > units.size) {
+            // cheaper to compute all of them
+            base.generateAllPossibleCandidates();
+            baseValid = true;
+            workValid = false;
+            return true;
+        }
+        for (int i = 0; i < count; i++) {
+            updateCandidates(changed[i]);
+            for (int peer : units.peers[changed[i]]) {
+                updateCandidates(peer);
+            }
+        }
+        if (workValid) {
+            // only added numbers, keep the eliminations
+            for (int i = 0; i < count; i++) {
+                work.setNumber(changed[i], base.getNumber(changed[i]));
+                restrictWork(changed[i]);
+                for (int peer : units.peers[changed[i]]) {
+                    restrictWork(peer);
+                }
+            }
+        }
+        return count > 0;
+    }
+
+    private void updateCandidates(int position) {
+        base.setCandidates(position, base.getAllowedMask(position));
+    }
+
+    private void restrictWork(int position) {
+        work.setCandidates(position, work.getCandidates(position) & base.getCandidates(position));
+    }
+
+    /**
+     * Single candidate or single position
+     * @param board base or work
+     * @param technique hardest technique used on the board, -1 for none
+     */
+    private Hint findSingle(SudokuBoard board, int technique) {
+        int mask;
+        for (int i = 0; i < units.cells; i++) {
+            if (board.getNumber(i) != 0) {
+                continue;
+            }
+            mask = board.getCandidates(i);
+            if (mask == 0) {
+                return new Hint(units, Hint.CONTRADICTION, null, 0, i, 0, new int[0], new int[0]);
+            }
+            if ((mask & (mask - 1)) == 0) {
+                return createHint(board, technique < 0 ? singleCandidate : technique, i, Integer.numberOfTrailingZeros(mask) + 1);
+            }
+        }
+        for (int unit = 0; unit < units.units.length; unit++) {
+            for (int number = 1; number <= units.size; number++) {
+                mask = board.getPositionMask(unit, number);
+                if (mask != 0 && (mask & (mask - 1)) == 0) {
+                    return createHint(board, technique < 0 ? singlePosition : technique,
+                            units.units[unit][Integer.numberOfTrailingZeros(mask)], number);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Hint with the candidates removed from the board compared to base
+     */
+    private Hint createHint(SudokuBoard board, int technique, int position, int number) {
+        int count = 0;
+        for (int i = 0; i < units.cells; i++) {
+            if ((base.getCandidates(i) & ~board.getCandidates(i)) != 0) {
+                count++;
+            }
+        }
+        int[] cells = new int[count];
+        int[] masks = new int[count];
+        count = 0;
+        for (int i = 0; i < units.cells; i++) {
+            if ((base.getCandidates(i) & ~board.getCandidates(i)) != 0) {
+                cells[count] = i;
+                masks[count] = base.getCandidates(i) & ~board.getCandidates(i);
+                count++;
+            }
+        }
+        return new Hint(units, Hint.PLACEMENT, scheduler.getTechniqueName(technique),
+                scheduler.getTechniqueLevel(technique), position, number, cells, masks);
+    }
+}
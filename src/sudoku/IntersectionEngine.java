@@ -0,0 +1,158 @@
+package sudoku;
+
+import java.util.Arrays;
+
+/**
+ * Candidate lines done on the intersections of units. Every pair of units
+ * sharing more than one cell (a square and a row or column on the classic
+ * board, 54 of them) is kept in a table together with the cells of the
+ * intersection as masks of both units. Using the position masks of the
+ * board the technique is a few bit operations per number:
+ * - pointing, the number is in the square only inside the intersection,
+ *   so it is removed from the rest of the row or column
+ * - claiming, the number is in the row or column only inside the
+ *   intersection, so it is removed from the rest of the square
+ * Other units (diagonals, jigsaw regions) are done the same in both
+ * directions.
+ * @author Ondrej Nebesky
+ */
+public class IntersectionEngine {
+
+    private final SudokuUnits units;
+
+    /** units of every intersection, first < second */
+    private final int[] first;
+    private final int[] second;
+    /** cells of the intersection as bits of the first and of the second unit */
+    private final int[] firstMask;
+    private final int[] secondMask;
+    /** units where a candidate line was found in the current call */
+    private final boolean[] lineFound;
+    /** candidates removed in the current call */
+    private int removed;
+
+    public IntersectionEngine(SudokuUnits units) {
+        this.units = units;
+        int count = units.units.length;
+        lineFound = new boolean[count];
+
+        // big enough for any pair of units, trimmed at the end
+        int[] a = new int[count * count];
+        int[] b = new int[count * count];
+        int[] maskA = new int[count * count];
+        int[] maskB = new int[count * count];
+        // index of the cell in the first unit, -1 for cells outside of it
+        int[] indexInFirst = new int[units.cells];
+        Arrays.fill(indexInFirst, -1);
+        int found = 0;
+        int shared, mA, mB, index;
+        for (int u = 0; u < count; u++) {
+            for (int i = 0; i < units.units[u].length; i++) {
+                indexInFirst[units.units[u][i]] = i;
+            }
+            for (int v = u + 1; v < count; v++) {
+                shared = 0;
+                mA = 0;
+                mB = 0;
+                for (int i = 0; i < units.units[v].length; i++) {
+                    index = indexInFirst[units.units[v][i]];
+                    if (index >= 0) {
+                        mA |= 1 << index;
+                        mB |= 1 << i;
+                        shared++;
+                    }
+                }
+                if (shared < 2) {
+                    continue;
+                }
+                a[found] = u;
+                b[found] = v;
+                maskA[found] = mA;
+                maskB[found] = mB;
+                found++;
+            }
+            for (int cell : units.units[u]) {
+                indexInFirst[cell] = -1;
+            }
+        }
+
+        first = new int[found];
+        second = new int[found];
+        firstMask = new int[found];
+        secondMask = new int[found];
+        System.arraycopy(a, 0, first, 0, found);
+        System.arraycopy(b, 0, second, 0, found);
+        System.arraycopy(maskA, 0, firstMask, 0, found);
+        System.arraycopy(maskB, 0, secondMask, 0, found);
+    }
+
+    public SudokuUnits getUnits() {
+        return units;
+    }
+
+    public int getIntersectionCount() {
+        return first.length;
+    }
+
+    /**
+     * Apply pointing and claiming on all the intersections
+     * @param board
+     * @return number of second units of the pairs (squares on the classic
+     * board) where a candidate line was found, a line counts even if there
+     * was nothing to remove, see getRemoved()
+     */
+    public int solve(SudokuBoard board) {
+        Arrays.fill(lineFound, false);
+        removed = 0;
+        int positionsA, positionsB, inside, rest;
+        for (int i = 0; i < first.length; i++) {
+            for (int number = 1; number <= units.size; number++) {
+                positionsA = board.getPositionMask(first[i], number);
+                inside = positionsA & firstMask[i];
+                if (inside == 0 || (inside & (inside - 1)) == 0) {
+                    // a line needs at least two candidates in the intersection
+                    continue;
+                }
+                positionsB = board.getPositionMask(second[i], number);
+                if ((positionsA & ~firstMask[i]) == 0) {
+                    // claiming on the classic board, the row or column to the square
+                    rest = positionsB & ~secondMask[i];
+                    removeCandidate(board, second[i], rest, number);
+                    lineFound[second[i]] = true;
+                } else if ((positionsB & ~secondMask[i]) == 0) {
+                    // pointing, the square to the row or column
+                    rest = positionsA & ~firstMask[i];
+                    removeCandidate(board, first[i], rest, number);
+                    lineFound[second[i]] = true;
+                }
+            }
+        }
+
+        int lines = 0;
+        for (boolean found : lineFound) {
+            if (found) {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Number of candidates removed by the last call of solve()
+     * @return
+     */
+    public int getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Remove the number from the cells of the unit
+     * @param cells bit i stands for the i-th cell of the unit
+     */
+    private void removeCandidate(SudokuBoard board, int unit, int cells, int number) {
+        for (; cells != 0; cells &= cells - 1) {
+            removed++;
+            board.removeCandidate(units.units[unit][Integer.numberOfTrailingZeros(cells)], number);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package sudoku;
+
+import java.util.Random;
+
+/**
+ * Jigsaw sudoku, irregular regions of connected cells take the place of
+ * the squares.
+ * @author Ondrej Nebesky
+ */
+public class JigsawConstraint implements SudokuConstraint {
+
+    /** swaps tried per cell when random regions are created */
+    private static final int SWAPS = 16;
+    /**
+     * steps back per cell a random grid may take on random regions, some
+     * regions allow so few grids that they are not found in any time, new
+     * regions are created then
+     */
+    private static final int GRID_STEPS = 2000;
+    /** steps to the four neighbours */
+    private static final int[] DX = {-1, 1, 0, 0};
+    private static final int[] DY = {0, 0, -1, 1};
+
+    /** region of every cell */
+    private final int[] regions;
+
+    /**
+     * @param regions region of every cell from 0 to size - 1
+     */
+    public JigsawConstraint(int[] regions) {
+        this.regions = regions.clone();
+    }
+
+    /**
+     * Random regions, the squares of a random solved board are deformed by
+     * swapping cells with the same number on the borders of two regions
+     * while both stay connected. Every region keeps all the numbers, so
+     * there is always a solved board for the regions, but the regions are
+     * used only if a random one is found quickly. On bigger boards than
+     * 9x9 hardly any random regions pass, so they are not supported.
+     * @param boxSize 2 or 3
+     * @param random
+     * @return
+     */
+    public static JigsawConstraint createRandom(int boxSize, Random random) {
+        if (boxSize > 3) {
+            throw new IllegalArgumentException("Random regions are created only up to 9x9");
+        }
+        SudokuUnits units = SudokuUnits.get(boxSize);
+        int[] grid = new int[units.cells];
+        JigsawConstraint jigsaw;
+        do {
+            jigsaw = new JigsawConstraint(deform(units, random));
+        } while (!new FullGridGenerator(new SudokuUnits(boxSize, jigsaw), random).generate(grid,
+                (long) units.cells * GRID_STEPS));
+        return jigsaw;
+    }
+
+    /**
+     * Regions made of the squares by random swaps
+     */
+    private static int[] deform(SudokuUnits units, Random random) {
+        int[] regions = units.boxOf.clone();
+        int[] solution = new int[units.cells];
+        new FullGridGenerator(units, random).generate(solution);
+        int[] border = new int[units.cells];
+        int a, b, other, x, y, direction, candidates;
+        for (int attempt = 0; attempt < units.cells * SWAPS; attempt++) {
+            // a cell of region A next to region B
+            a = random.nextInt(units.cells);
+            direction = random.nextInt(4);
+            x = units.colOf[a] + DX[direction];
+            y = units.rowOf[a] + DY[direction];
+            if (x < 0 || y < 0 || x >= units.size || y >= units.size || regions[units.index(x, y)] == regions[a]) {
+                continue;
+            }
+            other = regions[units.index(x, y)];
+            // a cell of region B with the same number next to region A
+            // goes the other way
+            candidates = 0;
+            for (int cell = 0; cell < units.cells; cell++) {
+                if (regions[cell] == other && solution[cell] == solution[a] && touches(units, regions, cell, regions[a])) {
+                    border[candidates++] = cell;
+                }
+            }
+            if (candidates == 0) {
+                continue;
+            }
+            b = border[random.nextInt(candidates)];
+            regions[b] = regions[a];
+            regions[a] = other;
+            if (!isConnected(units, regions, regions[b]) || !isConnected(units, regions, other)) {
+                regions[a] = regions[b];
+                regions[b] = other;
+            }
+        }
+        return regions;
+    }
+
+    public int getRegion(int cell) {
+        return regions[cell];
+    }
+
+    public void addTo(VariantLayout layout) {
+        layout.setRegions(regions);
+    }
+
+    public SudokuConstraint forSolution(SudokuUnits units, int[] solution, Random random) {
+        return this;
+    }
+
+    private static boolean touches(SudokuUnits units, int[] regions, int cell, int region) {
+        int x = units.colOf[cell], y = units.rowOf[cell];
+        return (x > 0 && regions[cell - 1] == region)
+                || (x < units.size - 1 && regions[cell + 1] == region)
+                || (y > 0 && regions[cell - units.size] == region)
+                || (y < units.size - 1 && regions[cell + units.size] == region);
+    }
+
+    /**
+     * Flood fill from the first cell of the region
+     */
+    private static boolean isConnected(SudokuUnits units, int[] regions, int region) {
+        int[] queue = new int[units.size];
+        boolean[] seen = new boolean[units.cells];
+        int head = 0, tail = 0;
+        for (int cell = 0; cell < units.cells && tail == 0; cell++) {
+            if (regions[cell] == region) {
+                queue[tail++] = cell;
+                seen[cell] = true;
+            }
+        }
+        int cell, x, y;
+        int[] next = new int[4];
+        while (head < tail) {
+            cell = queue[head++];
+            x = units.colOf[cell];
+            y = units.rowOf[cell];
+            next[0] = x > 0 ? cell - 1 : -1;
+            next[1] = x < units.size - 1 ? cell + 1 : -1;
+            next[2] = y > 0 ? cell - units.size : -1;
+            next[3] = y < units.size - 1 ? cell + units.size : -1;
+            for (int n : next) {
+                if (n >= 0 && !seen[n] && regions[n] == region) {
+                    seen[n] = true;
+                    queue[tail++] = n;
+                }
+            }
+        }
+        return tail == units.size;
+    }
+}
@@ -0,0 +1,137 @@
+package sudoku;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Killer sudoku, the board is divided into cages with the sum of their
+ * numbers, a number can't repeat in a cage. The template without any cages
+ * divides the generated solution into random cages of 1 to MAX_CAGE cells.
+ * @author Ondrej Nebesky
+ */
+public class KillerConstraint implements SudokuConstraint {
+
+    /** biggest cage of a generated puzzle */
+    private static final int MAX_CAGE = 4;
+
+    /** cells of the cages, null for the template */
+    private final int[][] cages;
+    private final int[] sums;
+
+    /**
+     * Template, the cages are created for every generated puzzle
+     */
+    public KillerConstraint() {
+        this.cages = null;
+        this.sums = null;
+    }
+
+    /**
+     * @param cages cells of every cage
+     * @param sums sum of every cage
+     */
+    public KillerConstraint(int[][] cages, int[] sums) {
+        if (cages.length != sums.length) {
+            throw new IllegalArgumentException("Sum needed for every cage");
+        }
+        this.cages = new int[cages.length][];
+        for (int i = 0; i < cages.length; i++) {
+            this.cages[i] = cages[i].clone();
+        }
+        this.sums = sums.clone();
+    }
+
+    public void addTo(VariantLayout layout) {
+        if (cages == null) {
+            return;
+        }
+        for (int i = 0; i < cages.length; i++) {
+            layout.addCage(cages[i], sums[i]);
+        }
+    }
+
+    /**
+     * Grow the cages from the cells in a random order, a cage takes a random
+     * free neighbour as long as its number is not in the cage yet
+     */
+    public SudokuConstraint forSolution(SudokuUnits units, int[] solution, Random random) {
+        if (cages != null) {
+            return this;
+        }
+        int[] cageOf = new int[units.cells];
+        Arrays.fill(cageOf, -1);
+        int[][] found = new int[units.cells][];
+        int[] foundSums = new int[units.cells];
+        int count = 0;
+        int[] cage = new int[MAX_CAGE];
+        int[] neighbours = new int[4 * MAX_CAGE];
+        int[] order = new int[units.cells];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+
+        int length, target, mask, sum, free;
+        for (int start : order) {
+            if (cageOf[start] >= 0) {
+                continue;
+            }
+            target = 1 + random.nextInt(MAX_CAGE);
+            cage[0] = start;
+            cageOf[start] = count;
+            mask = SudokuField.candidateBit(solution[start]);
+            sum = solution[start];
+            length = 1;
+            while (length < target) {
+                // free neighbours of the cage with a new number
+                free = 0;
+                for (int i = 0; i < length; i++) {
+                    int x = units.colOf[cage[i]], y = units.rowOf[cage[i]];
+                    free = addNeighbour(units, solution, cageOf, mask, x - 1, y, neighbours, free);
+                    free = addNeighbour(units, solution, cageOf, mask, x + 1, y, neighbours, free);
+                    free = addNeighbour(units, solution, cageOf, mask, x, y - 1, neighbours, free);
+                    free = addNeighbour(units, solution, cageOf, mask, x, y + 1, neighbours, free);
+                }
+                if (free == 0) {
+                    break;
+                }
+                int next = neighbours[random.nextInt(free)];
+                cage[length++] = next;
+                cageOf[next] = count;
+                mask |= SudokuField.candidateBit(solution[next]);
+                sum += solution[next];
+            }
+            found[count] = new int[length];
+            System.arraycopy(cage, 0, found[count], 0, length);
+            // the sum is written into the first cell
+            Arrays.sort(found[count]);
+            foundSums[count] = sum;
+            count++;
+        }
+        int[][] result = new int[count][];
+        System.arraycopy(found, 0, result, 0, count);
+        int[] resultSums = new int[count];
+        System.arraycopy(foundSums, 0, resultSums, 0, count);
+        return new KillerConstraint(result, resultSums);
+    }
+
+    private int addNeighbour(SudokuUnits units, int[] solution, int[] cageOf, int mask,
+            int x, int y, int[] neighbours, int free) {
+        if (x < 0 || y < 0 || x >= units.size || y >= units.size) {
+            return free;
+        }
+        int cell = units.index(x, y);
+        if (cageOf[cell] >= 0 || (mask & SudokuField.candidateBit(solution[cell])) != 0) {
+            return free;
+        }
+        // the same cell may be a neighbour of more cells of the cage, it
+        // only gets a bigger chance
+        neighbours[free] = cell;
+        return free + 1;
+    }
+}
@@ -0,0 +1,80 @@
+package sudoku;
+
+import java.util.Random;
+
+/**
+ * Some cells are marked as even or odd and only such numbers can be placed
+ * there. The template without any marks gets them from the generated
+ * solution, about every third cell is marked.
+ * @author Ondrej Nebesky
+ */
+public class ParityConstraint implements SudokuConstraint {
+
+    public static final int NONE = 0;
+    public static final int EVEN = 1;
+    public static final int ODD = 2;
+    /** one of this many cells is marked in a generated puzzle */
+    private static final int MARKED_CELLS = 3;
+    /** bits of 2, 4, 6, ... and 1, 3, 5, ... */
+    private static final int EVEN_MASK = 0xAAAAAAA;
+    private static final int ODD_MASK = 0x5555555;
+
+    /** parity of every cell, null for the template */
+    private final int[] parity;
+
+    /**
+     * Template, the marks are chosen for every generated puzzle
+     */
+    public ParityConstraint() {
+        this.parity = null;
+    }
+
+    /**
+     * @param parity NONE, EVEN or ODD for every cell
+     */
+    public ParityConstraint(int[] parity) {
+        for (int p : parity) {
+            if (p < NONE || p > ODD) {
+                throw new IllegalArgumentException("Unknown parity " + p);
+            }
+        }
+        this.parity = parity.clone();
+    }
+
+    /**
+     * @param cell
+     * @return NONE, EVEN or ODD
+     */
+    public int getParity(int cell) {
+        return parity == null ? NONE : parity[cell];
+    }
+
+    public void addTo(VariantLayout layout) {
+        if (parity == null) {
+            return;
+        }
+        if (parity.length != layout.getSize() * layout.getSize()) {
+            throw new IllegalArgumentException("Parity needed for every cell");
+        }
+        for (int cell = 0; cell < parity.length; cell++) {
+            if (parity[cell] == EVEN) {
+                layout.restrict(cell, EVEN_MASK);
+            } else if (parity[cell] == ODD) {
+                layout.restrict(cell, ODD_MASK);
+            }
+        }
+    }
+
+    public SudokuConstraint forSolution(SudokuUnits units, int[] solution, Random random) {
+        if (parity != null) {
+            return this;
+        }
+        int[] marks = new int[units.cells];
+        for (int cell = 0; cell < units.cells; cell++) {
+            if (random.nextInt(MARKED_CELLS) == 0) {
+                marks[cell] = solution[cell] % 2 == 0 ? EVEN : ODD;
+            }
+        }
+        return new ParityConstraint(marks);
+    }
+}
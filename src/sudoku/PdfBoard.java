@@ -1,34 +1,73 @@
 package sudoku;
 
 import com.itextpdf.text.BaseColor;
+import com.itextpdf.text.Chunk;
 import com.itextpdf.text.Document;
 import com.itextpdf.text.DocumentException;
 import com.itextpdf.text.Element;
+import com.itextpdf.text.Font;
 import com.itextpdf.text.PageSize;
 import com.itextpdf.text.Phrase;
 import com.itextpdf.text.pdf.PdfPCell;
 import com.itextpdf.text.pdf.PdfPTable;
 import com.itextpdf.text.pdf.PdfWriter;
+import java.io.BufferedOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * PDF Rendering class is used to save printable boards.
+ * PDF Rendering class is used to save printable boards. The boards may have
+ * any size, the cells get smaller so that two boards fit across the page.
+ * Books of any number of puzzles are written page by page, see createBook().
+ * Variants are drawn from the tables of the board: thick borders around
+ * the squares or jigsaw regions, killer cages in colours with the sum in
+ * their first cell, even cells gray and odd ones blue, cells on the extra
+ * units (diagonals) gray. Only the classic board gets every other square
+ * gray.
  * 
  * @author Ondrej Nebesky
  */
 public class PdfBoard {
 
+    /** background of the killer cages, neighbours get different ones */
+    private static final BaseColor[] CAGE_COLORS = {
+        new BaseColor(255, 245, 200), new BaseColor(215, 235, 255),
+        new BaseColor(220, 245, 215), new BaseColor(245, 220, 235)
+    };
+    private static final BaseColor ODD_COLOR = new BaseColor(200, 220, 245);
+
+    /** puzzles on the page of createDocument() */
+    private static final int BOARDS_PER_PAGE = 4;
+    /** space for the boards inside the margins and the spacing on top */
+    private static final float PAGE_WIDTH = (612f - 100f) * 0.96f;
+    private static final float PAGE_HEIGHT = 792f - 100f - 50f;
+    /** height of the board on the classic page, 9 cells of 23 points */
+    private static final float BOARD_HEIGHT = 23f * 9;
+    private static final float PADDING = 20f;
+    private static final float CAPTION_HEIGHT = 12f;
+    /** board with the padding and the caption, two of them fit under each other */
+    private static final float BOARD_BOX = BOARD_HEIGHT + 2 * PADDING + CAPTION_HEIGHT;
+
     /** Path to the resulting PDF file. */
     public String filename = "board.pdf";
 
     SudokuLogic logic;
 
     public PdfBoard(String filePath) {
+        this(filePath, SudokuUnits.STANDARD);
+    }
+
+    /**
+     * @param filePath
+     * @param units geometry of the generated boards
+     */
+    public PdfBoard(String filePath, SudokuUnits units) {
         filename = filePath;
-        logic = new SudokuLogic();
+        logic = new SudokuLogic(units);
         
     }
     
@@ -37,25 +76,94 @@ public class PdfBoard {
     }
  
     public void createDocument(int difficulty) {
+        createBook(BOARDS_PER_PAGE, difficulty, BOARDS_PER_PAGE);
+    }
+
+    /**
+     * Generate the puzzles one by one and write them as a book
+     * @param count number of puzzles
+     * @param difficulty as in SudokuLogic.generateSudoku()
+     * @param perPage puzzles on every page
+     */
+    public void createBook(final int count, final int difficulty, int perPage) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Number of puzzles can't be negative");
+        }
+        logic.setVerbose(false);
+        logic.setTracing(false);
+        createBook(new Iterator<GeneratedPuzzle>() {
+
+            private int left = count;
+
+            public boolean hasNext() {
+                return left > 0;
+            }
+
+            public GeneratedPuzzle next() {
+                if (left <= 0) {
+                    throw new NoSuchElementException();
+                }
+                left--;
+                return logic.generatePuzzle(difficulty);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        }, perPage);
+    }
+
+    /**
+     * Write the puzzles as a book with perPage puzzles on every page, as
+     * many pages as needed. Every page goes to the writer as soon as it is
+     * full, only the puzzles of one page are in memory, so the puzzles may
+     * come from a generator of any length. The boards get smaller when
+     * they don't fit on the page otherwise.
+     * @param puzzles
+     * @param perPage puzzles on every page
+     */
+    public void createBook(Iterator<GeneratedPuzzle> puzzles, int perPage) {
+        if (perPage < 1) {
+            throw new IllegalArgumentException("At least one puzzle per page is needed");
+        }
+        // as square as possible, 2 x 2 for the classic page
+        int columns = (int) Math.ceil(Math.sqrt(perPage));
+        int rows = (perPage + columns - 1) / columns;
+        float scale = Math.min(1f, Math.min(PAGE_WIDTH / columns / (BOARD_HEIGHT + PADDING), PAGE_HEIGHT / rows / BOARD_BOX));
+        float sidePadding = (PAGE_WIDTH / columns - BOARD_HEIGHT * scale) / 2;
         try {
             Document document = new Document(PageSize.LETTER, 50, 50, 50, 50);
 
-            PdfWriter.getInstance(document, new FileOutputStream(filename));
+            PdfWriter writer = PdfWriter.getInstance(document,
+                    new BufferedOutputStream(new FileOutputStream(filename)));
             document.open();
 
-            int i;
-            PdfPTable mainTable = new PdfPTable(2);
-            mainTable.setWidthPercentage(96f);
-            mainTable.setSpacingBefore(50f);
-            for (i = 0; i < 4; i++) {
-                PdfPCell cell = new PdfPCell(createBoard(difficulty));
-                cell.setBorder(0);
-                cell.setPadding(20f);
-
-                mainTable.addCell(cell);
+            int number = 0;
+            PdfPTable page;
+            PdfPCell cell;
+            while (puzzles.hasNext()) {
+                page = new PdfPTable(columns);
+                page.setWidthPercentage(96f);
+                page.setSpacingBefore(50f);
+                for (int i = 0; i < perPage && puzzles.hasNext(); i++) {
+                    cell = new PdfPCell(createBoard(puzzles.next(), ++number, scale));
+                    cell.setBorder(0);
+                    cell.setPadding(PADDING * scale);
+                    cell.setPaddingLeft(sidePadding);
+                    cell.setPaddingRight(sidePadding);
+                    page.addCell(cell);
+                }
+                page.completeRow();
+                document.add(page);
+                if (puzzles.hasNext()) {
+                    // the finished page is written out
+                    document.newPage();
+                }
+            }
+            if (number == 0) {
+                // a document can't be closed without any page
+                writer.setPageEmpty(false);
             }
-
-            document.add(mainTable);
             document.close();
         } catch (FileNotFoundException ex) {
             Logger.getLogger(PdfBoard.class.getName()).log(Level.SEVERE, null, ex);
@@ -64,58 +172,91 @@ public class PdfBoard {
         }
     }
 
-    private PdfPTable createBoard(int difficulty) throws DocumentException {
-        logic.generateSudoku(difficulty);
-        SudokuBoard board = logic.getBoard();
+    /**
+     * @param puzzle
+     * @param number of the puzzle in the book, written above it
+     * @param scale size of the board, 1 for the classic page
+     */
+    private PdfPTable createBoard(GeneratedPuzzle puzzle, int number, float scale) throws DocumentException {
+        SudokuUnits units = puzzle.getUnits();
+        // cells of the classic board are 23 points high
+        float height = BOARD_HEIGHT * scale / units.size;
+        Font font = new Font(Font.FontFamily.HELVETICA, Math.min(12f, height * 0.55f));
+        Font sumFont = new Font(Font.FontFamily.HELVETICA, Math.min(6f, height * 0.3f));
+        Font captionFont = new Font(Font.FontFamily.HELVETICA, 8f * Math.max(scale, 0.75f));
+        int[] cageColors = colorCages(units);
+        ParityConstraint parity = null;
+        for (SudokuConstraint constraint : units.getConstraints()) {
+            if (constraint instanceof ParityConstraint) {
+                parity = (ParityConstraint) constraint;
+            }
+        }
         
-        PdfPTable table = new PdfPTable(9); // 3 columns.
+        PdfPTable table = new PdfPTable(units.size);
 
         table.setWidthPercentage(42);
         table.setSpacingAfter(10);
-        PdfPCell cell;
-        boolean paintBackground = true;
-        int x, y, number;
-        for (int i = 0; i < 81; i++) {
-            y = i / 9;
-            x = i % 9;
-            number = board.getNumber(x, y);
-            cell = new PdfPCell(new Phrase(number == 0 ? "" : number + ""));
-            cell.setFixedHeight(23f);
+        PdfPCell cell = new PdfPCell(new Phrase(number + ".", captionFont));
+        cell.setColspan(units.size);
+        cell.setBorder(0);
+        cell.setFixedHeight(CAPTION_HEIGHT * scale);
+        table.addCell(cell);
+        Phrase phrase;
+        BaseColor background;
+        int x, y, value, cage;
+        for (int i = 0; i < units.cells; i++) {
+            y = i / units.size;
+            x = i % units.size;
+            value = puzzle.getNumber(i);
+            cage = units.getCageOf(i);
+            phrase = new Phrase();
+            if (cage >= 0 && units.cages[cage][0] == i) {
+                phrase.add(new Chunk(units.getCageSum(cage) + " ", sumFont));
+            }
+            phrase.add(new Chunk(value == 0 ? "" : value + "", font));
+            cell = new PdfPCell(phrase);
+            cell.setFixedHeight(height);
             cell.setBorderWidth(0f);
             cell.setVerticalAlignment(Element.ALIGN_CENTER);
             cell.setHorizontalAlignment(Element.ALIGN_MIDDLE);
-            cell.setPaddingLeft(8f);
-            cell.setPaddingTop(8f);
+            cell.setPaddingLeft(height / 3);
+            cell.setPaddingTop(height / 3);
 
-            // borders
-            if (x % 3 == 0) {
+            // borders, thick between the squares or regions
+            if (x == 0 || units.boxOf[i] != units.boxOf[i - 1]) {
                 cell.setBorderWidthLeft(2f);
-                if (x > 0) {
-                    paintBackground = !paintBackground;
-                }
             } else {
                 cell.setBorderWidthLeft(0.5f);
             }
-            if (x == 8) {
+            if (x == units.size - 1) {
                 cell.setBorderWidthRight(2f);
             }
-            if (y % 3 == 0) {
+            if (y == 0 || units.boxOf[i] != units.boxOf[i - units.size]) {
                 cell.setBorderWidthTop(2f);
 
             } else {
                 cell.setBorderWidthTop(0.5f);
             }
-            if (y == 8) {
+            if (y == units.size - 1) {
                 cell.setBorderWidthBottom(2f);
-                cell.setFixedHeight(16f);
+                cell.setFixedHeight(height * 16 / 23);
             }
-            if (i == 27 || i == 54) {
-                paintBackground = !paintBackground;
-            }
-
             // background
-            if (paintBackground) {
-                cell.setBackgroundColor(BaseColor.LIGHT_GRAY);
+            background = null;
+            if (cage >= 0) {
+                background = CAGE_COLORS[cageColors[cage]];
+            } else if (parity != null && parity.getParity(i) == ParityConstraint.EVEN) {
+                background = BaseColor.LIGHT_GRAY;
+            } else if (parity != null && parity.getParity(i) == ParityConstraint.ODD) {
+                background = ODD_COLOR;
+            } else if (units.isInExtraUnit(i)) {
+                background = BaseColor.LIGHT_GRAY;
+            } else if (units.isPlain() && (x / units.boxSize + y / units.boxSize) % 2 == 0) {
+                // every other square
+                background = BaseColor.LIGHT_GRAY;
+            }
+            if (background != null) {
+                cell.setBackgroundColor(background);
             }
 
             table.addCell(cell);
@@ -123,4 +264,31 @@ public class PdfBoard {
         }
         return table;
     }
+
+    /**
+     * Greedy coloring of the cages, a cage gets the first color not used by
+     * its neighbours, the first of them is used again if all of them are
+     * @return color of every cage
+     */
+    private int[] colorCages(SudokuUnits units) {
+        int[] colors = new int[units.getCageCount()];
+        int used, other;
+        for (int cage = 0; cage < colors.length; cage++) {
+            used = 0;
+            for (int cell : units.cages[cage]) {
+                for (int neighbour : new int[]{cell - 1, cell + 1, cell - units.size, cell + units.size}) {
+                    if (neighbour < 0 || neighbour >= units.cells
+                            || (neighbour % units.size != cell % units.size && neighbour / units.size != cell / units.size)) {
+                        continue;
+                    }
+                    other = units.getCageOf(neighbour);
+                    if (other >= 0 && other < cage) {
+                        used |= 1 << colors[other];
+                    }
+                }
+            }
+            colors[cage] = Integer.numberOfTrailingZeros(~used) % CAGE_COLORS.length;
+        }
+        return colors;
+    }
 }
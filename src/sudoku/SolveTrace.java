@@ -0,0 +1,166 @@
+package sudoku;
+
+/**
+ * Steps of the last solving as int records in a ring buffer, the text is
+ * created only when somebody asks for it. One record is kept for every
+ * technique call which changed the board:
+ * - technique id (see TechniqueScheduler), cell of the last change and
+ *   the number placed there (minus for a removed candidate)
+ * - numbers placed and candidates removed by the call
+ * - difficulty after the call
+ * When the buffer is full the oldest steps are overwritten.
+ * @author Ondrej Nebesky
+ */
+public class SolveTrace {
+
+    public static final int DEFAULT_CAPACITY = 256;
+    /** ints per record */
+    private static final int RECORD = 3;
+
+    private final int capacity;
+    private final int[] records;
+    /** records written since clear(), some of them may be overwritten */
+    private int written = 0;
+    /** difficulty of the whole solving */
+    private int difficulty = 0;
+
+    public SolveTrace() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SolveTrace(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity has to be at least 1");
+        }
+        this.capacity = capacity;
+        records = new int[capacity * RECORD];
+    }
+
+    public void clear() {
+        written = 0;
+        difficulty = 0;
+    }
+
+    /**
+     * @param technique id of the technique
+     * @param cell position of the last change, -1 for none
+     * @param number number placed there, minus for a removed candidate
+     * @param placed numbers placed by the step
+     * @param eliminated candidates removed by the step
+     * @param difficulty difficulty after the step
+     */
+    public void record(int technique, int cell, int number, int placed, int eliminated, int difficulty) {
+        int r = (written % capacity) * RECORD;
+        records[r] = (technique & 0xFF) | (number & 0xFF) << 8 | (cell + 1) << 16;
+        records[r + 1] = Math.min(placed, 0xFFFF) | Math.min(eliminated, 0xFFFF) << 16;
+        records[r + 2] = difficulty;
+        written++;
+    }
+
+    public int getDifficulty() {
+        return difficulty;
+    }
+
+    public void setDifficulty(int difficulty) {
+        this.difficulty = difficulty;
+    }
+
+    /**
+     * Number of the steps kept in the buffer
+     * @return
+     */
+    public int size() {
+        return Math.min(written, capacity);
+    }
+
+    /**
+     * Number of the oldest steps which were overwritten
+     * @return
+     */
+    public int getDropped() {
+        return written - size();
+    }
+
+    /** index of the step in the records, 0 is the oldest kept step */
+    private int offset(int step) {
+        return ((getDropped() + step) % capacity) * RECORD;
+    }
+
+    public int getTechnique(int step) {
+        return records[offset(step)] & 0xFF;
+    }
+
+    /**
+     * @param step
+     * @return number placed by the last change of the step, minus for
+     * a removed candidate
+     */
+    public int getNumber(int step) {
+        return (byte) (records[offset(step)] >>> 8);
+    }
+
+    /**
+     * @param step
+     * @return cell of the last change of the step, -1 for none
+     */
+    public int getCell(int step) {
+        return (records[offset(step)] >>> 16) - 1;
+    }
+
+    public int getPlaced(int step) {
+        return records[offset(step) + 1] & 0xFFFF;
+    }
+
+    public int getEliminated(int step) {
+        return records[offset(step) + 1] >>> 16;
+    }
+
+    public int getDifficulty(int step) {
+        return records[offset(step) + 2];
+    }
+
+    /**
+     * Id of the technique of the highest level used, the latest one if
+     * there are more of them, -1 for no steps
+     * @param scheduler gives the levels of the techniques
+     * @return
+     */
+    public int getHardestTechnique(TechniqueScheduler scheduler) {
+        int hardest = -1;
+        int technique;
+        for (int step = 0; step < size(); step++) {
+            technique = getTechnique(step);
+            if (hardest < 0 || scheduler.getTechniqueLevel(technique) >= scheduler.getTechniqueLevel(hardest)) {
+                hardest = technique;
+            }
+        }
+        return hardest;
+    }
+
+    /**
+     * Append the steps as text, one line per step
+     * @param out
+     * @param scheduler gives the names of the techniques
+     * @param units geometry of the solved board
+     */
+    public void render(StringBuilder out, TechniqueScheduler scheduler, SudokuUnits units) {
+        if (getDropped() > 0) {
+            out.append("... ").append(getDropped()).append(" steps more\n");
+        }
+        int cell, number;
+        for (int step = 0; step < size(); step++) {
+            out.append("Solving using ").append(scheduler.getTechniqueName(getTechnique(step)))
+                    .append(" (").append(getDifficulty(step)).append(")");
+            cell = getCell(step);
+            if (cell >= 0) {
+                number = getNumber(step);
+                out.append(" last at r").append(units.rowOf[cell] + 1)
+                        .append('c').append(units.colOf[cell] + 1)
+                        .append(number >= 0 ? " = " : " - ").append(Math.abs(number));
+            }
+            out.append(", placed ").append(getPlaced(step))
+                    .append(", eliminated ").append(getEliminated(step)).append(" \n");
+        }
+        out.append("Difficulty of the puzzle: ").append(difficulty).append("\n");
+    }
+}
@@ -0,0 +1,170 @@
+package sudoku;
+
+import java.util.Random;
+
+/**
+ * Produces solved boards by transforming a small pool of boards made by
+ * FullGridGenerator. Every transformation keeps the board valid: the numbers
+ * are relabeled, bands and stacks are permuted, rows are permuted inside
+ * their band, columns inside their stack and the board may be transposed.
+ * One seed board gives about 1.2 trillion different boards this way, but all
+ * of them are equivalent, so callers which need fully independent boards
+ * should switch the factory to independent grids.
+ * @author Ondrej Nebesky
+ */
+public class SolvedGridFactory {
+
+    public static final int DEFAULT_POOL_SIZE = 32;
+
+    private final SudokuUnits units;
+    private final FullGridGenerator generator;
+    private final XorShiftRandom random;
+
+    /** seed boards, filled on demand */
+    private final int[][] pool;
+    private int poolFilled = 0;
+
+    /** every board comes straight from the generator */
+    private boolean independentGrids = false;
+
+    /** new number for every number, relabel[0] stays 0 */
+    private final int[] relabel;
+    /** source row and column for every row and column of the new board */
+    private final int[] rowMap;
+    private final int[] colMap;
+    private final int[] bandOrder;
+    /** board written by fill() */
+    private final int[] grid;
+
+    public SolvedGridFactory(FullGridGenerator generator, int poolSize, Random random) {
+        this.units = generator.getUnits();
+        this.generator = generator;
+        this.random = new XorShiftRandom(random);
+        pool = new int[poolSize][];
+        relabel = new int[units.size + 1];
+        rowMap = new int[units.size];
+        colMap = new int[units.size];
+        bandOrder = new int[units.boxSize];
+        grid = new int[units.cells];
+    }
+
+    public SolvedGridFactory(FullGridGenerator generator, Random random) {
+        this(generator, DEFAULT_POOL_SIZE, random);
+    }
+
+    public SudokuUnits getUnits() {
+        return units;
+    }
+
+    public boolean isIndependentGrids() {
+        return independentGrids;
+    }
+
+    /**
+     * Switch off the transformations, all the boards are generated from
+     * scratch
+     * @param independentGrids
+     */
+    public void setIndependentGrids(boolean independentGrids) {
+        this.independentGrids = independentGrids;
+    }
+
+    /**
+     * Forget all the seed boards, new ones are generated when needed
+     */
+    public void refreshPool() {
+        poolFilled = 0;
+    }
+
+    /**
+     * Fill the board with a new solved grid
+     * @param board board with the same geometry, previous content is lost
+     * @return false if no grid was found
+     */
+    public boolean fill(SudokuBoard board) {
+        if (!generate(grid)) {
+            return false;
+        }
+        board.clear();
+        for (int i = 0; i < units.cells; i++) {
+            board.setNumber(i, grid[i]);
+        }
+        return true;
+    }
+
+    /**
+     * Write a new solved grid to the output
+     * @param output array of cells
+     * @return false if no grid was found
+     */
+    public boolean generate(int[] output) {
+        if (independentGrids) {
+            return generator.generate(output);
+        }
+
+        int[] seed;
+        if (poolFilled < pool.length) {
+            if (pool[poolFilled] == null) {
+                pool[poolFilled] = new int[units.cells];
+            }
+            if (!generator.generate(pool[poolFilled])) {
+                return false;
+            }
+            seed = pool[poolFilled++];
+        } else {
+            seed = pool[random.nextInt(pool.length)];
+        }
+        transform(seed, output);
+        return true;
+    }
+
+    /**
+     * Apply random transformation to the source board
+     */
+    private void transform(int[] source, int[] output) {
+        int size = units.size;
+
+        relabel[0] = 0;
+        for (int i = 1; i <= size; i++) {
+            relabel[i] = i;
+        }
+        random.shuffle(relabel, 1, size);
+        permuteLines(rowMap);
+        permuteLines(colMap);
+
+        int row;
+        if (random.nextInt(2) == 0) {
+            for (int y = 0; y < size; y++) {
+                row = rowMap[y] * size;
+                for (int x = 0; x < size; x++) {
+                    output[y * size + x] = relabel[source[row + colMap[x]]];
+                }
+            }
+        } else {
+            // transposed
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    output[y * size + x] = relabel[source[rowMap[x] * size + colMap[y]]];
+                }
+            }
+        }
+    }
+
+    /**
+     * Random order of the bands (or stacks) and of the lines inside every one
+     * of them
+     */
+    private void permuteLines(int[] map) {
+        int boxSize = units.boxSize;
+        for (int i = 0; i < boxSize; i++) {
+            bandOrder[i] = i;
+        }
+        random.shuffle(bandOrder, 0, boxSize);
+        for (int band = 0; band < boxSize; band++) {
+            for (int line = 0; line < boxSize; line++) {
+                map[band * boxSize + line] = bandOrder[band] * boxSize + line;
+            }
+            random.shuffle(map, band * boxSize, boxSize);
+        }
+    }
+}
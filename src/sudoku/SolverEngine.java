@@ -0,0 +1,32 @@
+package sudoku;
+
+/**
+ * Complete solver working on plain arrays of numbers. Engines are used to
+ * verify the puzzles, count their solutions and solve imported puzzles,
+ * the logical solving techniques stay in SudokuLogic. An engine keeps its
+ * working memory between the calls, so it must not be shared between threads.
+ * @author Ondrej Nebesky
+ */
+public interface SolverEngine {
+
+    /**
+     * Geometry of the boards the engine can solve
+     * @return
+     */
+    SudokuUnits getUnits();
+
+    /**
+     * Count solutions of the puzzle, but stop when the limit is reached
+     * @param puzzle numbers of the puzzle, 0 for empty cell
+     * @param limit the search stops after finding this many solutions
+     * @return number of solutions, at most limit
+     */
+    int countSolutions(int[] puzzle, int limit);
+
+    /**
+     * Solve the puzzle in place
+     * @param puzzle numbers of the puzzle, filled with the first solution found
+     * @return false if there is no solution
+     */
+    boolean solve(int[] puzzle);
+}
@@ -0,0 +1,17 @@
+package sudoku;
+
+/**
+ * One solving technique registered in the TechniqueScheduler
+ * @author Ondrej Nebesky
+ */
+public interface SolvingTechnique {
+
+    /**
+     * Apply the technique on the whole board
+     * @param board
+     * @return how many times the technique was used (filled fields, units,
+     * fish, chains...), the difficulty grows by the weight of the technique
+     * for every use
+     */
+    int apply(SudokuBoard board);
+}
@@ -0,0 +1,205 @@
+package sudoku;
+
+/**
+ * Naked and hidden subsets (pairs, triples and quads) in all rows, columns
+ * and squares. All combinations of 2 - 4 members of a unit are precomputed
+ * as masks, so a subset is found by ORing a few candidate masks of the cells
+ * (naked) or position masks of the numbers (hidden). Only the members which
+ * may be part of a subset (open, with at most size candidates or positions)
+ * are packed to the low bits and combined, using the table for their count,
+ * so the rest of the unit costs nothing even on 25x25 boards.
+ * Every unit is searched completely, all the eliminations are done in one
+ * call.
+ * @author Ondrej Nebesky
+ */
+public class SubsetEngine {
+
+    public static final int MAX_SIZE = 4;
+
+    private final SudokuUnits units;
+    /** combinations for every subset size and number of open members */
+    private final int[][][] combinations;
+    /** candidates of the cells or positions of the numbers in the unit */
+    private final int[] masks;
+    /** members of the unit which may be part of a subset, packed */
+    private final int[] members;
+
+    public SubsetEngine(SudokuUnits units) {
+        this.units = units;
+        masks = new int[units.size];
+        members = new int[units.size];
+        combinations = createCombinationTables(units.size);
+    }
+
+    /**
+     * Combinations of k out of m bits for every k from 2 to MAX_SIZE and
+     * every m up to n
+     * @return [k][m] tables
+     */
+    static int[][][] createCombinationTables(int n) {
+        int[][][] tables = new int[MAX_SIZE + 1][n + 1][];
+        for (int k = 2; k <= MAX_SIZE; k++) {
+            for (int m = 0; m <= n; m++) {
+                tables[k][m] = m < k ? new int[0] : createCombinations(m, k);
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Combination of the packed members as a mask of the original indexes
+     */
+    static int unpack(int combination, int[] members) {
+        int mask = 0;
+        for (int c = combination; c != 0; c &= c - 1) {
+            mask |= 1 << members[Integer.numberOfTrailingZeros(c)];
+        }
+        return mask;
+    }
+
+    /**
+     * All masks of n bits with k bits set, in increasing order
+     */
+    static int[] createCombinations(int n, int k) {
+        // n over k
+        long count = 1;
+        for (int i = 0; i < k; i++) {
+            count = count * (n - i) / (i + 1);
+        }
+        int[] result = new int[(int) count];
+        int combination = (1 << k) - 1;
+        int lowest, ripple;
+        for (int i = 0; i < result.length; i++) {
+            result[i] = combination;
+            // next higher number with the same number of bits
+            lowest = combination & -combination;
+            ripple = combination + lowest;
+            combination = ripple | (((combination ^ ripple) >>> 2) / lowest);
+        }
+        return result;
+    }
+
+    public SudokuUnits getUnits() {
+        return units;
+    }
+
+    /**
+     * Find size cells of a unit which have together only size candidates and
+     * remove these candidates from the rest of the unit
+     * @param board
+     * @param size 2 - 4
+     * @return number of units where something was removed
+     */
+    public int solveNaked(SudokuBoard board, int size) {
+        int changedUnits = 0;
+        for (int unit = 0; unit < units.units.length; unit++) {
+            if (solveNaked(board, unit, size)) {
+                changedUnits++;
+            }
+        }
+        return changedUnits;
+    }
+
+    private boolean solveNaked(SudokuBoard board, int unit, int size) {
+        int[] cells = units.units[unit];
+        int empty = 0, count = 0;
+        for (int i = 0; i < cells.length; i++) {
+            masks[i] = board.getNumber(cells[i]) == 0 ? board.getCandidates(cells[i]) : 0;
+            if (masks[i] != 0) {
+                empty |= 1 << i;
+                if (Integer.bitCount(masks[i]) <= size) {
+                    members[count++] = i;
+                }
+            }
+        }
+        if (Integer.bitCount(empty) <= size || count < size) {
+            return false;
+        }
+
+        boolean changed = false;
+        int union, rest, i;
+        for (int combination : combinations[size][count]) {
+            union = 0;
+            for (int c = combination; c != 0; c &= c - 1) {
+                union |= masks[members[Integer.numberOfTrailingZeros(c)]];
+            }
+            if (Integer.bitCount(union) != size) {
+                continue;
+            }
+            for (rest = empty & ~unpack(combination, members); rest != 0; rest &= rest - 1) {
+                i = Integer.numberOfTrailingZeros(rest);
+                if ((masks[i] & union) != 0) {
+                    masks[i] &= ~union;
+                    board.setCandidates(cells[i], masks[i]);
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Find size numbers which are candidates only in size cells of a unit
+     * and remove all other candidates from these cells
+     * @param board
+     * @param size 2 - 4
+     * @return number of units where something was removed
+     */
+    public int solveHidden(SudokuBoard board, int size) {
+        int changedUnits = 0;
+        for (int unit = 0; unit < units.units.length; unit++) {
+            if (solveHidden(board, unit, size)) {
+                changedUnits++;
+            }
+        }
+        return changedUnits;
+    }
+
+    private boolean solveHidden(SudokuBoard board, int unit, int size) {
+        int[] cells = units.units[unit];
+        // numbers still missing in the unit, bit n - 1 for number n
+        int numbers = 0, count = 0;
+        for (int n = 0; n < units.size; n++) {
+            masks[n] = board.getPositionMask(unit, n + 1);
+            if (masks[n] != 0) {
+                numbers |= 1 << n;
+                if (Integer.bitCount(masks[n]) <= size) {
+                    members[count++] = n;
+                }
+            }
+        }
+        if (Integer.bitCount(numbers) <= size || count < size) {
+            return false;
+        }
+
+        boolean changed = false;
+        int union, candidates, position, subset;
+        for (int combination : combinations[size][count]) {
+            union = 0;
+            for (int c = combination; c != 0; c &= c - 1) {
+                union |= masks[members[Integer.numberOfTrailingZeros(c)]];
+            }
+            if (Integer.bitCount(union) != size) {
+                continue;
+            }
+            boolean removed = false;
+            subset = unpack(combination, members);
+            for (int u = union; u != 0; u &= u - 1) {
+                position = cells[Integer.numberOfTrailingZeros(u)];
+                candidates = board.getCandidates(position);
+                if ((candidates & ~subset) != 0) {
+                    board.setCandidates(position, candidates & subset);
+                    removed = true;
+                }
+            }
+            if (removed) {
+                // the other numbers lost some positions
+                for (int n = 0; n < units.size; n++) {
+                    masks[n] = board.getPositionMask(unit, n + 1);
+                }
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
@@ -1,39 +1,82 @@
 package sudoku;
 
 import java.util.ArrayList;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.Arrays;
 
 /**
  * This class store data structure for the board.
+ * Values and candidates of all the cells are kept in flat arrays indexed
+ * by the position of the cell (see SudokuUnits), so the whole board is
+ * a couple of primitive arrays instead of a grid of objects.
  * @author One
  */
 public class SudokuBoard {
 
-    private boolean debug = true;
-    private SudokuField[][] board;
+    /** print the debug messages */
+    private boolean debug = false;
+
+    /** geometry of the board */
+    private final SudokuUnits units;
+    /** numbers on the board, 0 for empty cell */
+    private byte[] values;
+    /** candidate mask for every cell, up to 25 numbers */
+    private int[] candidates;
+    /** numbers placed in every row, column and square */
+    private int[] unitMasks;
+    /** how many times is every number placed in every unit, size x size per unit */
+    private byte[] unitCounts;
+    /**
+     * empty cells of every unit where every number is still a candidate,
+     * bit i stands for the i-th cell of the unit, size masks per unit
+     */
+    private int[] positionMasks;
+    /** one bit for every cell filled by the computer */
+    private long[] generated;
+    /** undo entries, two ints each: position | old value << 16, old candidates */
+    private int[] trail = new int[0];
+    private int trailSize = 0;
+    private boolean trailing = false;
+    /** grows with every change of a value or candidates, see getModificationCount() */
+    private int modifications = 0;
+    /** numbers placed and candidates removed since the board was created */
+    private int placements = 0;
+    private int eliminations = 0;
+    /** cell of the last change and the number placed there, minus for a removed candidate */
+    private int lastPosition = -1;
+    private int lastNumber = 0;
+    /** views of the cells, created on demand */
+    private SudokuField[] fields;
+    /** work stack of fillSingleCandidates() and its members */
+    private int[] singles;
+    private boolean[] waiting;
 
     public SudokuBoard() {
+        this(SudokuUnits.STANDARD);
+    }
 
-        // initialize the board, fill zero inside
-        board = new SudokuField[9][9];
+    public SudokuBoard(SudokuUnits units) {
+        this.units = units;
 
-        for (int i = 0; i < 9; i++) {
-            for (int j = 0; j < 9; j++) {
-                board[i][j] = new SudokuField(0, i + j * 9);
-            }
-        }
+        // initialize the board, fill zero inside
+        values = new byte[units.cells];
+        candidates = new int[units.cells];
+        unitMasks = new int[units.units.length];
+        unitCounts = new byte[units.units.length * units.size];
+        positionMasks = new int[units.units.length * units.size];
+        generated = new long[(units.cells + 63) / 64];
     }
 
     /**
      * Reset all the fields to zero
      */
     public void clear() {
-        for (int i = 0; i < 9; i++) {
-            for (int j = 0; j < 9; j++) {
-                board[i][j].clear();
-            }
-        }
+        Arrays.fill(values, (byte) 0);
+        Arrays.fill(candidates, 0);
+        Arrays.fill(unitMasks, 0);
+        Arrays.fill(unitCounts, (byte) 0);
+        Arrays.fill(positionMasks, 0);
+        trailSize = 0;
+        modifications++;
     }
 
     private void debug(String s) {
@@ -42,32 +85,253 @@ public class SudokuBoard {
         }
     }
 
-    private void debugArrayList(ArrayList list) {
-        if (debug) {
-            String output = "";
-            for (int i = 0; i < list.size(); i++) {
-                output += list.get(i) + ", ";
+    public SudokuUnits getUnits() {
+        return units;
+    }
+
+    /**
+     * Returns views of all the fields as [x][y] grid
+     * @return
+     */
+    public SudokuField[][] getBoard() {
+        SudokuField[][] grid = new SudokuField[units.size][units.size];
+        for (int i = 0; i < units.size; i++) {
+            for (int j = 0; j < units.size; j++) {
+                grid[i][j] = getValue(i, j);
             }
-            System.out.println(output);
         }
+        return grid;
     }
 
-    public SudokuField[][] getBoard() {
-        return board;
+    public void setNumber(int x, int y, int number) {
+        setNumber(units.index(x, y), number);
     }
 
-    public void setBoard(SudokuField[][] board) {
-        this.board = board;
+    /**
+     * Place the number to the cell and remove it from the cell candidates
+     * @param position index of the cell
+     * @param number 0 clears the cell
+     */
+    public void setNumber(int position, int number) {
+        if (number >= 0 && number <= units.size) {
+            int old = values[position];
+            if (old != number || (number > 0 && (candidates[position] & SudokuField.candidateBit(number)) != 0)) {
+                if (trailing) {
+                    record(position);
+                }
+                modifications++;
+                lastPosition = position;
+                lastNumber = number;
+            }
+            int before = livePositions(position);
+            if (old != number) {
+                if (number > 0) {
+                    placements++;
+                }
+                if (old > 0) {
+                    leaveUnits(position, old);
+                }
+                values[position] = (byte) number;
+                if (number > 0) {
+                    enterUnits(position, number);
+                }
+            }
+            if (number > 0) {
+                candidates[position] &= ~SudokuField.candidateBit(number);
+            }
+            updatePositions(position, before, livePositions(position));
+        }
     }
 
-    public void setNumber(int x, int y, int number) {
-        if (number >= 0 && number <= 9) {
-            board[x][y].setValue(number);
+    /**
+     * Candidates of the cell which count in the position masks, filled
+     * cells have none
+     */
+    private int livePositions(int position) {
+        return values[position] == 0 ? candidates[position] : 0;
+    }
+
+    /**
+     * Flip the bit of the cell in the position masks of all numbers which
+     * changed between the old and the new mask
+     */
+    private void updatePositions(int position, int oldMask, int newMask) {
+        int changed = oldMask ^ newMask;
+        if (changed == 0) {
+            return;
+        }
+        int base, bit;
+        for (int u = 0; u < units.cellUnits[position].length; u++) {
+            base = units.cellUnits[position][u] * units.size;
+            bit = 1 << units.unitIndex[position][u];
+            for (int c = changed; c != 0; c &= c - 1) {
+                positionMasks[base + Integer.numberOfTrailingZeros(c)] ^= bit;
+            }
+        }
+    }
+
+    /**
+     * Cells of the unit where the number is still a candidate
+     * @param unit index of row, column or square (see SudokuUnits)
+     * @param number
+     * @return bit i stands for the i-th cell of the unit
+     */
+    public int getPositionMask(int unit, int number) {
+        return positionMasks[unit * units.size + number - 1];
+    }
+
+    /**
+     * Count the number in all units of the cell
+     */
+    private void enterUnits(int position, int number) {
+        int bit = SudokuField.candidateBit(number);
+        int unit;
+        for (int u = 0; u < units.cellUnits[position].length; u++) {
+            unit = units.cellUnits[position][u];
+            unitCounts[unit * units.size + number - 1]++;
+            unitMasks[unit] |= bit;
         }
     }
 
+    /**
+     * Remove the number from all units of the cell, the bit stays in the
+     * mask while the number is placed somewhere else in the unit
+     */
+    private void leaveUnits(int position, int number) {
+        int bit = SudokuField.candidateBit(number);
+        int unit;
+        for (int u = 0; u < units.cellUnits[position].length; u++) {
+            unit = units.cellUnits[position][u];
+            if (--unitCounts[unit * units.size + number - 1] == 0) {
+                unitMasks[unit] &= ~bit;
+            }
+        }
+    }
+
+    /**
+     * Numbers placed in the unit
+     * @param unit index of row, column or square (see SudokuUnits)
+     * @return candidate mask
+     */
+    public int getUnitMask(int unit) {
+        return unitMasks[unit];
+    }
+
     public int getNumber(int x, int y) {
-        return board[x][y].getValue();
+        return values[units.index(x, y)];
+    }
+
+    public int getNumber(int position) {
+        return values[position];
+    }
+
+    /**
+     * Candidate mask of the cell
+     * @param position
+     * @return
+     */
+    public int getCandidates(int position) {
+        return candidates[position];
+    }
+
+    public int getCandidates(int x, int y) {
+        return candidates[units.index(x, y)];
+    }
+
+    public void setCandidates(int position, int mask) {
+        if (candidates[position] != mask) {
+            if (trailing) {
+                record(position);
+            }
+            modifications++;
+            int removed = candidates[position] & ~mask;
+            if (removed != 0) {
+                eliminations += Integer.bitCount(removed);
+                lastPosition = position;
+                lastNumber = -(Integer.numberOfTrailingZeros(removed) + 1);
+            }
+            int before = livePositions(position);
+            candidates[position] = mask;
+            updatePositions(position, before, livePositions(position));
+        }
+    }
+
+    public void removeCandidate(int position, int candidate) {
+        if (candidate > 0) {
+            setCandidates(position, candidates[position] & ~SudokuField.candidateBit(candidate));
+        }
+    }
+
+    /**
+     * Start recording undo entries for every change of values and candidates.
+     * Entries recorded before are discarded.
+     */
+    public void startTrail() {
+        trailing = true;
+        trailSize = 0;
+    }
+
+    /**
+     * Stop recording changes and forget the recorded ones
+     */
+    public void stopTrail() {
+        trailing = false;
+        trailSize = 0;
+    }
+
+    public boolean isTrailing() {
+        return trailing;
+    }
+
+    /**
+     * Current position in the trail, the board can be returned to this
+     * state using rollbackTo()
+     * @return
+     */
+    public int mark() {
+        return trailSize;
+    }
+
+    /**
+     * Undo all the changes recorded after the mark was taken
+     * @param mark value returned by mark()
+     */
+    public void rollbackTo(int mark) {
+        int position, old, before;
+        while (trailSize > mark) {
+            modifications++;
+            trailSize -= 2;
+            position = trail[trailSize] & 0xFFFF;
+            old = trail[trailSize] >>> 16;
+            before = livePositions(position);
+            if (values[position] != old) {
+                if (values[position] > 0) {
+                    leaveUnits(position, values[position]);
+                }
+                values[position] = (byte) old;
+                if (old > 0) {
+                    enterUnits(position, old);
+                }
+            }
+            candidates[position] = trail[trailSize + 1];
+            updatePositions(position, before, livePositions(position));
+        }
+    }
+
+    /**
+     * Save the current state of the cell to the trail
+     * @param position
+     */
+    private void record(int position) {
+        if (trailSize == trail.length) {
+            trail = Arrays.copyOf(trail, Math.max(64, trail.length * 2));
+        }
+        trail[trailSize++] = position | (values[position] << 16);
+        trail[trailSize++] = candidates[position];
+    }
+
+    public boolean isGenerated(int position) {
+        return (generated[position >> 6] & (1L << position)) != 0;
     }
 
     /**
@@ -77,18 +341,29 @@ public class SudokuBoard {
      * @return
      */
     public SudokuField getValue(int x, int y) {
-        return board[x][y];
+        int position = units.index(x, y);
+        if (fields == null) {
+            fields = new SudokuField[units.cells];
+        }
+        if (fields[position] == null) {
+            fields[position] = new SudokuField(this, position);
+        }
+        return fields[position];
     }
 
     /**
-     * Get allowed numbers for a single cell
-     * @param position modulo 81
+     * Get allowed numbers for a single cell, getAllowedMask() is cheaper
+     * @param position index of the cell
      * @return ArrayList
      */
     public ArrayList getAllowedNumbers(int position){
-        int x = position / 9;
-        int y = position % 9;
-        return getAllowedNumbers(x, y);
+        ArrayList<Integer> possibleVars = new ArrayList<Integer>();
+        int mask = getAllowedMask(position);
+        while (mask != 0) {
+            possibleVars.add(SudokuField.firstCandidate(mask));
+            mask &= mask - 1;
+        }
+        return possibleVars;
     }
 
     /**
@@ -98,66 +373,67 @@ public class SudokuBoard {
      * @return
      */
     public ArrayList getAllowedNumbers(int x, int y) {
-        ArrayList possibleVars = new ArrayList();
-        ArrayList foundVars = new ArrayList();
+        return getAllowedNumbers(units.index(x, y));
+    }
 
-        // return empty list if there is number already
-        if (board[x][y].getValue() > 0) {
-            return foundVars;
-        }
+    /**
+     * Allowed numbers for a single cell as a candidate mask
+     * @param x
+     * @param y
+     * @return
+     */
+    public int getAllowedMask(int x, int y) {
+        return getAllowedMask(units.index(x, y));
+    }
 
-        // add possible numbers
-        for (int k = 1; k <= 9; k++) {
-            possibleVars.add(k);
+    public int getAllowedMask(int position) {
+        // return empty mask if there is number already
+        if (values[position] > 0) {
+            return 0;
         }
 
-        // check row and col
-        for (int i = 0; i < 9; i++) {
-            if (board[x][i].isInArayList(possibleVars) && !board[x][i].isEmpty()) {
-                foundVars.add(board[x][i].getValue());
-                //System.out.println("Found " + board[x][i] + " in a row");
-            }
-            if (board[i][y].isInArayList(possibleVars) && !board[i][y].isEmpty()) {
-                foundVars.add(board[i][y].getValue());
-                //System.out.println("Found " + board[i][y] + " in a column");
-            }
-
+        int[] cellUnits = units.cellUnits[position];
+        int mask = units.allCandidates & ~(unitMasks[cellUnits[0]] | unitMasks[cellUnits[1]] | unitMasks[cellUnits[2]]);
+        if (units.plain) {
+            return mask;
+        }
+        // rules of the variant
+        for (int u = 3; u < cellUnits.length; u++) {
+            mask &= ~unitMasks[cellUnits[u]];
+        }
+        mask &= units.cellMasks[position];
+        if (units.cageOf[position] >= 0) {
+            mask &= units.cageAllowed(units.cageOf[position], getCageMask(units.cageOf[position]));
         }
+        return mask;
+    }
 
-        // check the square
-        for (int i = x - x % 3; i < x - x % 3 + 3; i++) {
-            for (int j = y - y % 3; j < y - y % 3 + 3; j++) {
-                if (board[i][j].isInArayList(possibleVars) && (x != i || y != j) && !board[i][j].isEmpty()) {
-                    foundVars.add(board[i][j].getValue());
-                }
+    /**
+     * Numbers placed in the killer cage
+     * @param cage see SudokuUnits
+     * @return candidate mask
+     */
+    public int getCageMask(int cage) {
+        int mask = 0;
+        for (int cell : units.cages[cage]) {
+            if (values[cell] > 0) {
+                mask |= SudokuField.candidateBit(values[cell]);
             }
         }
-        possibleVars.removeAll(foundVars);
-        return possibleVars;
+        return mask;
     }
 
     /**
      * Update all the values in row, column and square
      * This method will remove not valid candidates
-     * TODO: Has some issues
      * @param x
      * @param y
      */
     public void updateAllowedNumbersEverywhere(int x, int y) {
-        ArrayList candidates;
-        for (int i = 0; i < 9; i++) {
-            candidates = getAllowedNumbers(x, i);
-            board[x][i].setCandidates(candidates);
-            candidates = getAllowedNumbers(i, y);
-            board[i][y].setCandidates(candidates);
-        }
-
-        // check square
-        for (int i = x - x % 3; i < x - x % 3 + 3; i++) {
-            for (int j = y - y % 3; j < y - y % 3 + 3; j++) {
-                candidates = getAllowedNumbers(i, j);
-                board[i][j].setCandidates(candidates);
-            }
+        int position = units.index(x, y);
+        setCandidates(position, getAllowedMask(position));
+        for (int peer : units.peers[position]) {
+            setCandidates(peer, getAllowedMask(peer));
         }
     }
 
@@ -169,17 +445,10 @@ public class SudokuBoard {
      * @param candidate 
      */
     public void removeCandidateEverywhere(int x, int y, int candidate) {
-        // check row and col
-        for (int i = 0; i < 9; i++) {
-            board[x][i].removeCandidate(candidate);
-            board[i][y].removeCandidate(candidate);
-        }
-
-        // check square
-        for (int i = x - x % 3; i < x - x % 3 + 3; i++) {
-            for (int j = y - y % 3; j < y - y % 3 + 3; j++) {
-                board[i][j].removeCandidate(candidate);
-            }
+        int position = units.index(x, y);
+        removeCandidate(position, candidate);
+        for (int peer : units.peers[position]) {
+            removeCandidate(peer, candidate);
         }
     }
 
@@ -190,72 +459,144 @@ public class SudokuBoard {
      * @return 
      */
     public boolean isValid(int x, int y) {
-        int val = board[x][y].getValue();
-        for (int i = 0; i < 9; i++) {
-            if (board[x][i].getValue() == val && i != y) {
-                return false;
+        int position = units.index(x, y);
+        int val = values[position];
+        if (val == 0) {
+            // empty cell is valid only when there are no empty peers
+            for (int peer : units.peers[position]) {
+                if (values[peer] == 0) {
+                    return false;
+                }
             }
-            if (board[i][y].getValue() == val && i != x) {
+            return true;
+        }
+        // the number has to be placed only once in all the units
+        int[] cellUnits = units.cellUnits[position];
+        for (int u = 0; u < cellUnits.length; u++) {
+            if (unitCounts[cellUnits[u] * units.size + val - 1] != 1) {
                 return false;
             }
         }
-
-        for (int i = x - x % 3; i < x - x % 3 + 3; i++) {
-            for (int j = y - y % 3; j < y - y % 3 + 3; j++) {
-                if (board[i][j].getValue() == val && (i != x || j != y)) {
-                    return false;
+        if (units.plain) {
+            return true;
+        }
+        if ((units.cellMasks[position] & SudokuField.candidateBit(val)) == 0) {
+            return false;
+        }
+        int cage = units.cageOf[position];
+        if (cage >= 0) {
+            // different numbers, the sum reached only when the cage is full
+            int sum = 0, mask = 0, filled = 0;
+            for (int cell : units.cages[cage]) {
+                if (values[cell] > 0) {
+                    if ((mask & SudokuField.candidateBit(values[cell])) != 0) {
+                        return false;
+                    }
+                    mask |= SudokuField.candidateBit(values[cell]);
+                    sum += values[cell];
+                    filled++;
                 }
             }
+            if (filled == units.cages[cage].length ? sum != units.cageSums[cage] : sum >= units.cageSums[cage]) {
+                return false;
+            }
         }
-
         return true;
     }
 
+    /**
+     * Counter which changes whenever a value or a candidate of the board is
+     * changed, a technique made progress if it differs before and after
+     * the call
+     * @return
+     */
+    public int getModificationCount() {
+        return modifications;
+    }
+
+    /**
+     * Numbers placed on the board so far, only grows
+     * @return
+     */
+    public int getPlacementCount() {
+        return placements;
+    }
+
+    /**
+     * Candidates removed from the board so far, only grows
+     * @return
+     */
+    public int getEliminationCount() {
+        return eliminations;
+    }
+
+    /**
+     * Cell changed last, -1 if none yet
+     * @return
+     */
+    public int getLastChangedPosition() {
+        return lastPosition;
+    }
+
+    /**
+     * Number placed into the last changed cell, or minus the lowest
+     * candidate removed from it
+     * @return
+     */
+    public int getLastChangedNumber() {
+        return lastNumber;
+    }
+
     /**
      * Returns number of filled fields
      * @return
      */
     public int getNumberOfIndicies() {
         int indicies = 0;
-        for (int i = 0; i < 9; i++) {
-            for (int j = 0; j < 9; j++) {
-                if (!board[i][j].isEmpty()) {
-                    indicies++;
-                }
+        for (int i = 0; i < units.cells; i++) {
+            if (values[i] != 0) {
+                indicies++;
             }
         }
         return indicies;
     }
 
     /**
-     * Create a deep copy of the whole board and all its fields
+     * Create a copy of the whole board
      * @return 
      */
     @Override
     public SudokuBoard clone() {
-        SudokuBoard newBoard = new SudokuBoard();
-        SudokuField[][] arrayBoard = new SudokuField[9][9];
-        try {
-            for (int i = 0; i < 9; i++) {
-                for (int j = 0; j < 9; j++) {
-                    arrayBoard[i][j] = (SudokuField) board[i][j].clone();
-                }
-            }
-        } catch (CloneNotSupportedException ex) {
-            Logger.getLogger(SudokuBoard.class.getName()).log(Level.SEVERE, null, ex);
-        }
-        newBoard.setBoard((SudokuField[][]) arrayBoard);
+        SudokuBoard newBoard = new SudokuBoard(units);
+        copyTo(newBoard);
         return newBoard;
     }
 
+    /**
+     * Overwrite the target board with the state of this board. Nothing is
+     * allocated, so a preallocated board can be used as a snapshot which is
+     * taken and restored many times.
+     * @param target board with the same geometry
+     */
+    public void copyTo(SudokuBoard target) {
+        if (target.units != units) {
+            throw new IllegalArgumentException("Boards have different geometry");
+        }
+        System.arraycopy(values, 0, target.values, 0, values.length);
+        System.arraycopy(candidates, 0, target.candidates, 0, candidates.length);
+        System.arraycopy(unitMasks, 0, target.unitMasks, 0, unitMasks.length);
+        System.arraycopy(unitCounts, 0, target.unitCounts, 0, unitCounts.length);
+        System.arraycopy(positionMasks, 0, target.positionMasks, 0, positionMasks.length);
+        System.arraycopy(generated, 0, target.generated, 0, generated.length);
+        target.modifications++;
+    }
+
     /**
      * Generate list of possibilities for each field
      */
     public void generateAllPossibleCandidates() {
-        for (int i = 0; i < 9; i++) {
-            for (int j = 0; j < 9; j++) {
-                board[i][j].setCandidates(getAllowedNumbers(i, j));
-            }
+        for (int i = 0; i < units.cells; i++) {
+            setCandidates(i, getAllowedMask(i));
         }
     }
 
@@ -266,9 +607,10 @@ public class SudokuBoard {
      */
     public void updateCandidates(int i, int j) {
 
-        board[i][j].setCandidates(getAllowedNumbers(i, j));
+        int position = units.index(i, j);
+        setCandidates(position, getAllowedMask(position));
         // should update candidates also for column, row and square
-        System.out.println("Updating possibilites for " + i + " " + j + " which is " + board[i][j].getSizeOfCandidates());
+        debug("Updating possibilites for " + i + " " + j + " which is " + Integer.bitCount(candidates[position]));
     }
 
     /**
@@ -280,55 +622,113 @@ public class SudokuBoard {
      * @return false - no change
      */
     public boolean checkCandidates(int i, int j) {
+        return checkCandidates(units.index(i, j));
+    }
 
-        if (board[i][j].getSizeOfCandidates() == 1) {
-            board[i][j].setValue(board[i][j].getCandidate(0));
-
-            board[i][j].removeCandidate(board[i][j].getValue());
-            removeCandidateEverywhere(i, j, board[i][j].getValue());
-
+    public boolean checkCandidates(int position) {
+        int mask = candidates[position];
+        if (isSingleCandidate(position)) {
+            int value = SudokuField.firstCandidate(mask);
+            setNumber(position, value);
+            for (int peer : units.peers[position]) {
+                removeCandidate(peer, value);
+            }
             return true;
         }
         return false;
     }
 
+    /**
+     * Fill all the fields which have only one candidate, also the ones which
+     * get only one candidate while doing so. The board is scanned once, then
+     * only the peers which lost a candidate are checked, they wait on a work
+     * stack until it is empty.
+     * @return number of filled fields
+     */
+    public int fillSingleCandidates() {
+        if (singles == null) {
+            singles = new int[units.cells];
+            waiting = new boolean[units.cells];
+        }
+        int size = 0;
+        for (int position = 0; position < units.cells; position++) {
+            if (isSingleCandidate(position)) {
+                singles[size++] = position;
+                waiting[position] = true;
+            }
+        }
+
+        int filled = 0;
+        int position, value, bit, mask;
+        while (size > 0) {
+            position = singles[--size];
+            waiting[position] = false;
+            if (!isSingleCandidate(position)) {
+                // a peer took the last candidate meanwhile
+                continue;
+            }
+            value = SudokuField.firstCandidate(candidates[position]);
+            bit = SudokuField.candidateBit(value);
+            setNumber(position, value);
+            filled++;
+            for (int peer : units.peers[position]) {
+                mask = candidates[peer];
+                if ((mask & bit) != 0) {
+                    setCandidates(peer, mask & ~bit);
+                    if (!waiting[peer] && isSingleCandidate(peer)) {
+                        singles[size++] = peer;
+                        waiting[peer] = true;
+                    }
+                }
+            }
+        }
+        return filled;
+    }
+
+    /**
+     * Empty field with exactly one candidate, filled fields may keep
+     * candidates of their peers and are never overwritten
+     */
+    private boolean isSingleCandidate(int position) {
+        int mask = candidates[position];
+        return values[position] == 0 && mask != 0 && (mask & (mask - 1)) == 0;
+    }
+
     @Override
     public String toString() {
         String output = "";
-        String candidates = "";
-        for (int i = 0; i < 9; i++) {
-            candidates = "   ";
-            for (int j = 0; j < 9; j++) {
-                if (board[j][i].isEmpty()) {
+        String candidateCounts = "";
+        int position;
+        for (int i = 0; i < units.size; i++) {
+            candidateCounts = "   ";
+            for (int j = 0; j < units.size; j++) {
+                position = units.index(j, i);
+                if (values[position] == 0) {
                     output += " -";
                 } else {
-                    output += " " + board[j][i].toString();
+                    output += " " + values[position];
                 }
-                candidates += " " + board[j][i].getSizeOfCandidates();
+                candidateCounts += " " + Integer.bitCount(candidates[position]);
             }
-            output += candidates;
+            output += candidateCounts;
             output += System.getProperty("line.separator");
         }
         return output;
     }
 
     public boolean isFullBoard() {
-        for (int i = 0; i < 9; i++) {
-            for (int j = 0; j < 9; j++) {
-                if (board[j][i].isEmpty()) {
-                    return false;
-                }
+        for (int i = 0; i < units.cells; i++) {
+            if (values[i] == 0) {
+                return false;
             }
         }
         return true;
     }
 
     public boolean isEmptyBoard() {
-        for (int i = 0; i < 9; i++) {
-            for (int j = 0; j < 9; j++) {
-                if (!board[j][i].isEmpty()) {
-                    return false;
-                }
+        for (int i = 0; i < units.cells; i++) {
+            if (values[i] != 0) {
+                return false;
             }
         }
         return true;
@@ -336,66 +736,32 @@ public class SudokuBoard {
 
     /**
      * Basic solving technique looking if there is only one option how to place
-     * a number
-     * @param x
-     * @param y
-     * @return
+     * a number. A number which is a candidate in only one cell of a row,
+     * column or square belongs there, the position masks tell it at once.
+     * The masks are checked again until nothing changes.
+     * @return number of filled fields
      */
-    public boolean findSinglePosition(int x, int y) {
-
-        ArrayList<Integer> candidates = board[x][y].getCandidates();
-        ArrayList<Integer> foundInRows = new ArrayList();
-        ArrayList<Integer> found = new ArrayList();
-        for (int candidate : candidates) {
-
-            // check rows
-            for (int step = 0; step < 9; step += 3) {
-                if (x == step + 0) {
-                    if (isValueInRow(candidate, step + 1) && isValueInRow(candidate, step + 2)) {
-                        foundInRows.add(candidate);
-                    }
-                }
-                if (x == step + 1) {
-                    if (isValueInRow(candidate, step + 0) && isValueInRow(candidate, step + 2)) {
-                        foundInRows.add(candidate);
-                    }
-                }
-                if (x == step + 2) {
-                    if (isValueInRow(candidate, step + 0) && isValueInRow(candidate, step + 1)) {
-                        foundInRows.add(candidate);
-                    }
-                }
-            }
-        }
-        // check columns
-        for (int candidate : foundInRows) {
-            for (int step = 0; step < 9; step += 3) {
-                if (x == step + 0) {
-                    if (isValueInCol(candidate, step + 1) && isValueInCol(candidate, step + 2)) {
-                        found.add(candidate);
-                    }
-                }
-                if (x == step + 1) {
-                    if (isValueInCol(candidate, step + 0) && isValueInCol(candidate, step + 2)) {
-                        found.add(candidate);
-                    }
-                }
-                if (x == step + 2) {
-                    if (isValueInCol(candidate, step + 0) && isValueInCol(candidate, step + 1)) {
-                        found.add(candidate);
+    public int fillHiddenSingles() {
+        int filled = 0;
+        boolean change = true;
+        int mask, position, number;
+        while (change) {
+            change = false;
+            for (int i = 0; i < positionMasks.length; i++) {
+                mask = positionMasks[i];
+                if (mask != 0 && (mask & (mask - 1)) == 0) {
+                    position = units.units[i / units.size][Integer.numberOfTrailingZeros(mask)];
+                    number = i % units.size + 1;
+                    setNumber(position, number);
+                    for (int peer : units.peers[position]) {
+                        removeCandidate(peer, number);
                     }
+                    filled++;
+                    change = true;
                 }
             }
         }
-
-        if (found.size() > 0) {
-            for (Integer val : found) {
-                board[x][y].setValue(val);
-            }
-            return true;
-        } else {
-            return false;
-        }
+        return filled;
     }
 
     /**
@@ -405,12 +771,10 @@ public class SudokuBoard {
      * @return
      */
     public boolean isValueInRow(int value, int row) {
-        for (int i = 0; i < 9; i++) {
-            if (board[i][row].getValue() == value) {
-                return true;
-            }
+        if (value == 0) {
+            return isValueInUnit(value, row);
         }
-        return false;
+        return (unitMasks[row] & SudokuField.candidateBit(value)) != 0;
     }
 
     /**
@@ -420,278 +784,22 @@ public class SudokuBoard {
      * @return
      */
     public boolean isValueInCol(int value, int col) {
-        for (int i = 0; i < 9; i++) {
-            if (board[col][i].getValue() == value) {
-                return true;
-            }
+        if (value == 0) {
+            return isValueInUnit(value, units.size + col);
         }
-        return false;
+        return (unitMasks[units.size + col] & SudokuField.candidateBit(value)) != 0;
     }
 
     /**
-     * Execute candidate lines on 3x3 square
-     * find two in line and delete colliding candidates
-     * @param x left top corner
-     * @param y left top corner
+     * Search the unit cell by cell
+     * @param value
+     * @param unit
      * @return
      */
-    public boolean solveCandidateLinesInSquare(int x, int y) {
-        //debug("--- Solving using candidate lines on " + x + " " + y);
-
-        // put squares into arrays (numbers from zero to eight in 9x9 block)
-
-        // array where candidate can't be found
-        int[][] b = {
-            {4, 5, 7, 8},
-            {3, 5, 6, 8},
-            {3, 4, 6, 7},
-            {1, 2, 7, 8},
-            {0, 2, 6, 8},
-            {0, 1, 6, 7},
-            {1, 2, 4, 5},
-            {0, 2, 3, 5},
-            {0, 1, 3, 4}
-        };
-
-        // good array
-        // first row than col
-        int[][] g = {
-            {1, 2, 3, 6},
-            {0, 2, 4, 7},
-            {0, 1, 5, 8},
-            {4, 5, 0, 6},
-            {3, 5, 1, 7},
-            {3, 4, 2, 8},
-            {7, 8, 0, 3},
-            {6, 8, 1, 4},
-            {6, 7, 2, 5}
-        };
-
-        boolean foundInBad = false;
-        boolean foundInGood = false;
-        boolean foundInRow = false;
-
-        // there was at least one change
-        boolean found = false;
-
-        // position where it was found
-        int foundx, foundy;
-
-        ArrayList<Integer> candidates;
-
-        SudokuField field1, field2, field3, field4;
-
-        int lx, ly;
-
-        // first one
-        for (int field = 0; field < 9; field++) {
-            lx = field % 3;
-            ly = field / 3;
-            candidates = board[x + lx][y + ly].getCandidates();
-            //debug("Checking field " + (x + lx) + " " + (y + ly));
-            for (int candidate : candidates) {
-                //debug("Searching for candidate " + candidate);
-
-                foundInBad = false;
-                // all bad zones
-                //for (int i = 0; i < b.length; i++) {
-                // all squares in zone
-                for (int j = 0; j < 4; j++) {
-                    // search in the bad zone
-                    //debug("Searching in bad zone " + (x + b[field][j] % 3) + " " + (y + b[field][j] / 3));
-                    if (board[x + b[field][j] % 3][y + b[field][j] / 3].containsCandidate(candidate)) {
-                        //debug(" - field already contains candidate " + candidate);
-                        //debugArrayList(board[x + b[field][j] % 3][y + b[field][j] / 3].getCandidates());
-                        foundInBad = true;
-                    }
-                }
-                //}
-                //debug("Found in bad area: " + foundInBad);
-                if (!foundInBad) {
-                    foundInGood = false;
-                    foundx = -1;
-                    foundy = -1;
-
-                    // search good zones
-                    // for (int i = 0; i < 4; i++) {
-                    // all squares in zone
-                    // has to be found only in col or only in row
-                    field1 = board[x + g[field][0] % 3][y + g[field][0] / 3];
-                    field2 = board[x + g[field][1] % 3][y + g[field][1] / 3];
-                    field3 = board[x + g[field][2] % 3][y + g[field][2] / 3];
-                    field4 = board[x + g[field][3] % 3][y + g[field][3] / 3];
-
-                    // row
-                    if ((field1.containsCandidate(candidate) || field2.containsCandidate(candidate)) && (!field3.containsCandidate(candidate) || !field4.containsCandidate(candidate))) {
-                        foundInGood = true;
-                        foundInRow = true;
-                        foundx = x + g[field][0] % 3;
-                        foundy = y + g[field][0] / 3;
-                        //debug("Found positive in row: " + foundx + " " + foundy);
-                    }
-
-                    // col
-                    if ((!field1.containsCandidate(candidate) || !field2.containsCandidate(candidate)) && (field3.containsCandidate(candidate) || field4.containsCandidate(candidate))) {
-                        foundInGood = true;
-                        foundInRow = false;
-                        foundx = x + g[field][3] % 3;
-                        foundy = y + g[field][3] / 3;
-                        //debug("Found positive in col: " + foundx + " " + foundy);
-                    }
-
-                    // }
-                    // remove candidate from other fields
-                    if (foundInGood) {
-                        if (foundInRow) {
-                            for (int i = 0; i < 9; i++) {
-                                if (i < x || i > x + 2) {
-                                    //debug("Removing candidate " + candidate + " from " + i + " " + foundy);
-                                    board[i][foundy].removeCandidate(candidate);
-
-
-                                }
-                            }
-                        } else {
-                            // column
-                            for (int i = 0; i < 9; i++) {
-                                if (i < y || i > y + 2) {
-                                    //debug("Removing candidate " + candidate + " from " + foundx + " " + i);
-                                    board[foundx][i].removeCandidate(candidate);
-
-                                }
-                            }
-                        }
-                        found = true;
-                    }
-                }
-
-
-            }
-
-        }
-        return found;
-    }
-
-    public boolean solveNakedPairsRow(int row) {
-        ArrayList<Integer> pairs = new ArrayList();
-
-        int a1, b1, a2, b2;
- 
-        // find pairs
-        for (int i = 0; i < 9; i++) {
-            if (board[i][row].getSizeOfCandidates() == 2) {
-                pairs.add(i);
-            }
-        }
-
-        // find matching pairs
-        for (int i = 0; i < pairs.size() - 1; i++) {
-
-            a1 = board[pairs.get(i)][row].getCandidate(0);
-            a2 = board[pairs.get(i)][row].getCandidate(1);
-
-            for (int j = i + 1; j < pairs.size(); j++) {
-
-                b1 = board[pairs.get(j)][row].getCandidate(0);
-                b2 = board[pairs.get(j)][row].getCandidate(1);
-                if ((a1 == b1 && a2 == b2) || (a1 == b2 && a2 == b1)) {
-                    // found naked pair
-                    for (int k = 0; k < 9; k++) {
-                        if (k != pairs.get(i) && k != pairs.get(j)) {
-                            board[k][row].removeCandidate(a1);
-                            board[k][row].removeCandidate(a2);
-                            return true;
-                        }
-                    }
-                }
-            }
-        }
-        return false;
-    }
-
-    public boolean solveNakedPairsCol(int col) {
-        ArrayList<Integer> pairs = new ArrayList();
-        int a1, b1, a2, b2;
-
-        // find pairs
-        for (int i = 0; i < 9; i++) {
-            if (board[col][i].getSizeOfCandidates() == 2) {
-                pairs.add(i);
-            }
-        }
-
-        // find matching pairs
-        for (int i = 0; i < pairs.size() - 1; i++) {
-            a1 = board[col][pairs.get(i)].getCandidate(0);
-            a2 = board[col][pairs.get(i)].getCandidate(1);
-            for (int j = i + 1; j < pairs.size(); j++) {
-
-                b1 = board[col][pairs.get(j)].getCandidate(0);
-                b2 = board[col][pairs.get(j)].getCandidate(1);
-                if ((a1 == b1 && a2 == b2) || (a1 == b2 && a2 == b1)) {
-                    // found naked pair
-                    for (int k = 0; k < 9; k++) {
-                        if (k != pairs.get(i) && k != pairs.get(j)) {
-                            board[col][k].removeCandidate(a1);
-                            board[col][k].removeCandidate(a2);
-                            return true;
-                        }
-                    }
-                }
-            }
-        }
-        return false;
-    }
-
-    public boolean findHiddenPairs(ArrayList<SudokuField> fields) {
-        ArrayList<SudokuField>[] found;
-        SudokuField field;
-        SudokuField nakedPair = null;
-
-        
-        // create
-        for (int i = 0; i < fields.size(); i++) {
-            field = fields.get(i);
-      
-            found = new ArrayList[field.getSizeOfCandidates()];
-            for (int c = 0; c < field.getSizeOfCandidates(); c++) {
-                found[c] = new ArrayList();
-                for (int j = 0; j < fields.size(); j++) {
-                    if (j != i && fields.get(j).containsCandidate(field.getCandidates().get(c))) {
-                        found[c].add(fields.get(j));
-                    }
-                }
-            }
-
-            // check array for hidden pairs
-            nakedPair = null;
-            for (int j = 0; j < found.length; j++) {
-                if (found[j].size() == 1) {
-                    if (nakedPair != null) {
-
-                        if (nakedPair.getPosition() == found[j].get(0).getPosition()) {
-
-                            // remove additional value(s)
-                            SudokuField a, b;
-                            a = nakedPair;
-                            b = field;
-                            if (a.getSizeOfCandidates() < b.getSizeOfCandidates()) {
-                                b = nakedPair;
-                                a = field;
-                            }
-                            for (int k = 0; k < a.getSizeOfCandidates(); k++) {
-                                if (!b.containsCandidate(a.getCandidate(k))) {
-                                    //debug("Removing candidate " + a.getCandidate(k));
-                                    a.removeCandidate(a.getCandidate(k));
-                                }
-                            }
-                            return true;
-                        }
-                    } else {
-                        
-                        nakedPair = found[j].get(0);
-                    }
-                }
+    private boolean isValueInUnit(int value, int unit) {
+        for (int position : units.units[unit]) {
+            if (values[position] == value) {
+                return true;
             }
         }
         return false;
@@ -701,13 +809,10 @@ public class SudokuBoard {
      * once it is produced, we want to set empty fields to be filled by users 
      */
     public void markGeneratedFields(){
-        for (int i = 0; i < 9; i++) {
-            for (int j = 0; j < 9; j++) {
-                if ((board[i][j]).getValue() == 0){
-                    (board[i][j]).generated = false;
-                }else{
-                    (board[i][j]).generated = true;
-                }
+        Arrays.fill(generated, 0L);
+        for (int i = 0; i < units.cells; i++) {
+            if (values[i] != 0){
+                generated[i >> 6] |= 1L << i;
             }
         }
     }
@@ -0,0 +1,305 @@
+package sudoku;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Command line solver for files with one puzzle per line, 81 characters,
+ * digits for the numbers and 0 or . for the empty cells. For every line
+ * one line is written in the same order:
+ * - solution;difficulty for a puzzle with one solution
+ * - multiple;0, unsolvable;0 or invalid;0 otherwise
+ * Empty lines stay empty. The ratings don't depend on the speed of the
+ * machine, so they are the same in every run. The lines are read in
+ * batches which are solved on a pool of threads, only a few batches are in
+ * memory at once, so files of any size stream through.
+ *
+ * java -cp Sudoku.jar sudoku.SudokuCli [-threads n] [-norate] input [output]
+ *
+ * The input and the output can be - for the standard input and output.
+ * @author Ondrej Nebesky
+ */
+public class SudokuCli {
+
+    private static final int BATCH_SIZE = 2048;
+    /** batches waiting or being solved per thread */
+    private static final int BATCHES_PER_THREAD = 2;
+    private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+    private final int threads;
+    private final boolean rate;
+    /** solver and rating logic of every worker thread */
+    private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+
+        @Override
+        protected Worker initialValue() {
+            return new Worker();
+        }
+    };
+    // statistics
+    private long solved = 0;
+    private long failed = 0;
+
+    public SudokuCli(int threads, boolean rate) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads has to be at least 1");
+        }
+        this.threads = threads;
+        this.rate = rate;
+    }
+
+    public static void main(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean rate = true;
+        String input = null, output = "-";
+        int i = 0;
+        try {
+            for (; i < args.length && args[i].startsWith("-") && args[i].length() > 1; i++) {
+                if (args[i].equals("-threads") && i + 1 < args.length) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-norate")) {
+                    rate = false;
+                } else {
+                    usage();
+                    return;
+                }
+            }
+        } catch (NumberFormatException ex) {
+            usage();
+            return;
+        }
+        if (i < args.length) {
+            input = args[i++];
+        }
+        if (i < args.length) {
+            output = args[i++];
+        }
+        if (input == null || i < args.length || threads < 1) {
+            usage();
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        SudokuCli cli = new SudokuCli(threads, rate);
+        try {
+            Reader in = input.equals("-") ? new InputStreamReader(System.in, CHARSET)
+                    : new InputStreamReader(new FileInputStream(input), CHARSET);
+            Writer out = output.equals("-") ? new OutputStreamWriter(System.out, CHARSET)
+                    : new OutputStreamWriter(new FileOutputStream(output), CHARSET);
+            try {
+                cli.process(new BufferedReader(in, 1 << 16), new BufferedWriter(out, 1 << 16));
+            } finally {
+                in.close();
+                out.close();
+            }
+        } catch (IOException ex) {
+            System.err.println("Error: " + ex.getMessage());
+            System.exit(1);
+        }
+        System.err.println("Solved " + cli.getSolved() + ", failed " + cli.getFailed()
+                + " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java -cp Sudoku.jar sudoku.SudokuCli [-threads n] [-norate] input [output]");
+        System.err.println("  input and output are files with one puzzle per line, - for standard input/output");
+        System.exit(2);
+    }
+
+    /**
+     * Solve all the lines of the input, the output is flushed at the end
+     * @param in
+     * @param out
+     * @throws IOException
+     */
+    public void process(BufferedReader in, Writer out) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<String[]>> pending = new ArrayDeque<Future<String[]>>();
+        try {
+            String[] batch = readBatch(in);
+            while (batch != null) {
+                pending.add(executor.submit(createTask(batch)));
+                if (pending.size() >= threads * BATCHES_PER_THREAD) {
+                    write(pending.poll(), out);
+                }
+                batch = readBatch(in);
+            }
+            while (!pending.isEmpty()) {
+                write(pending.poll(), out);
+            }
+            out.flush();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public long getSolved() {
+        return solved;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return null at the end of the input
+     */
+    private String[] readBatch(BufferedReader in) throws IOException {
+        String[] lines = new String[BATCH_SIZE];
+        int count = 0;
+        String line;
+        while (count < BATCH_SIZE && (line = in.readLine()) != null) {
+            lines[count++] = line;
+        }
+        if (count == 0) {
+            return null;
+        }
+        if (count < BATCH_SIZE) {
+            String[] shorter = new String[count];
+            System.arraycopy(lines, 0, shorter, 0, count);
+            return shorter;
+        }
+        return lines;
+    }
+
+    private Callable<String[]> createTask(final String[] lines) {
+        return new Callable<String[]>() {
+
+            public String[] call() {
+                workers.get().solve(lines);
+                return lines;
+            }
+        };
+    }
+
+    private void write(Future<String[]> batch, Writer out) throws IOException {
+        String[] lines;
+        try {
+            lines = batch.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Solving was interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new IOException("Solving failed", ex.getCause());
+        }
+        for (String line : lines) {
+            if (line.length() > 0) {
+                if (Character.isDigit(line.charAt(0))) {
+                    solved++;
+                } else {
+                    failed++;
+                }
+            }
+            out.write(line);
+            out.write('\n');
+        }
+    }
+
+    /**
+     * Working memory of one thread
+     */
+    private class Worker {
+
+        private final SudokuUnits units = SudokuUnits.STANDARD;
+        private final BitboardSolver solver = new BitboardSolver();
+        private final SudokuLogic logic = new SudokuLogic();
+        private final SudokuBoard board = new SudokuBoard(units);
+        /** valid puzzles of the batch, solved in place */
+        private final int[][] grids = new int[BATCH_SIZE][units.cells];
+        /** givens of the puzzles for the rating */
+        private final int[][] givens = new int[BATCH_SIZE][units.cells];
+        /** line of every puzzle */
+        private final int[] lineOf = new int[BATCH_SIZE];
+        private final int[] solutions = new int[BATCH_SIZE];
+        private final char[] solution = new char[units.cells];
+
+        Worker() {
+            logic.setVerbose(false);
+            logic.setTracing(false);
+            logic.getChainEngine(board).setTimeBudget(0);
+        }
+
+        /**
+         * Replace the puzzles of the batch by the output lines
+         * @param lines at most BATCH_SIZE
+         */
+        void solve(String[] lines) {
+            int count = 0;
+            String line;
+            for (int i = 0; i < lines.length; i++) {
+                line = lines[i].trim();
+                lines[i] = line;
+                if (line.length() == 0) {
+                    continue;
+                }
+                if (!parse(line, grids[count])) {
+                    lines[i] = "invalid;0";
+                    continue;
+                }
+                System.arraycopy(grids[count], 0, givens[count], 0, units.cells);
+                lineOf[count++] = i;
+            }
+            for (int i = 0; i < count; i++) {
+                solutions[i] = solver.countAndSolve(grids[i], 2);
+                lines[lineOf[i]] = format(i);
+            }
+        }
+
+        /**
+         * @param i index of the solved puzzle
+         * @return output line for it
+         */
+        private String format(int i) {
+            if (solutions[i] == 0) {
+                return "unsolvable;0";
+            }
+            if (solutions[i] > 1) {
+                return "multiple;0";
+            }
+            int difficulty = 0;
+            if (rate) {
+                board.clear();
+                for (int cell = 0; cell < units.cells; cell++) {
+                    board.setNumber(cell, givens[i][cell]);
+                }
+                difficulty = logic.ratePuzzle(board);
+            }
+            for (int cell = 0; cell < units.cells; cell++) {
+                solution[cell] = (char) ('0' + grids[i][cell]);
+            }
+            return new String(solution) + ";" + difficulty;
+        }
+
+        private boolean parse(String line, int[] grid) {
+            if (line.length() != units.cells) {
+                return false;
+            }
+            char c;
+            for (int i = 0; i < units.cells; i++) {
+                c = line.charAt(i);
+                if (c == '.') {
+                    grid[i] = 0;
+                } else if (c >= '0' && c <= '9') {
+                    grid[i] = c - '0';
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package sudoku;
+
+import java.util.Random;
+
+/**
+ * Extra rule of a variant puzzle. A rule is only data: units where every
+ * number is exactly once, regions replacing the squares, killer cages and
+ * numbers allowed in single cells. SudokuUnits turns them into its tables
+ * (units of every cell, peers, cage combinations), so the board, the
+ * solvers and the techniques work with the variant without any code of
+ * their own and the classic board pays nothing for it.
+ * @author Ondrej Nebesky
+ */
+public interface SudokuConstraint {
+
+    /**
+     * Describe the rule, called once when the tables are built
+     * @param layout
+     */
+    void addTo(VariantLayout layout);
+
+    /**
+     * Rule for a puzzle generated from the solution. Rules which are given
+     * by the solution (cages, even and odd cells) create their data here,
+     * the others return this.
+     * @param units tables the solution was generated with
+     * @param solution numbers of all the cells
+     * @param random
+     * @return
+     */
+    SudokuConstraint forSolution(SudokuUnits units, int[] solution, Random random);
+}
@@ -7,7 +7,8 @@ import java.util.ArrayList;
 import javax.swing.JPanel;
 
 /**
- * The class is used to render the board
+ * The class is used to render the board, any size given by the SudokuUnits
+ * of the board. The numbers the user can click to are in one row below.
  * @author Ondrej Nebesky
  */
 public class SudokuDrawingPanel extends JPanel {
@@ -28,9 +29,9 @@ public class SudokuDrawingPanel extends JPanel {
     int clickedNumber = 0;
     boolean showHints = false;
     // numbers for selected field
-    Object[] empty = new Object[0];
+    int empty = 0;
     ArrayList emptySelection = new ArrayList();
-    Object[] allowedNumbers = empty;
+    int allowedNumbers = empty;
     ArrayList wrongFields = emptySelection;
 
     public SudokuDrawingPanel() {
@@ -60,28 +61,33 @@ public class SudokuDrawingPanel extends JPanel {
     }
 
     private void loadDimensions() {
+        int size = board.getUnits().size;
         dy = getSize().height;
         dx = getSize().width;
         //sideSize = (dy < dx ? dy : dx);
-        if (dy > dx * 23 / 18) {
+        // two rows of the boxes below for the numbers
+        if (dy > dx * (2 * size + 5) / (2 * size)) {
             sideSize = dx;
         } else {
-            sideSize = dy * 18 / 22;
+            sideSize = dy * 2 * size / (2 * size + 4);
         }
-        // height of the box below
 
-        boxSize = (int) (sideSize / 9);
+        boxSize = (int) (sideSize / size);
+        // the squares end exactly at the border
+        sideSize = boxSize * size;
     }
 
     private void drawGrid(Graphics g) {
+        SudokuUnits units = board.getUnits();
+        int square = boxSize * units.boxSize;
         
-        // background
+        // background, every other square
         g.setColor(Color.lightGray);
-        g.fillRect(0, 0, sideSize / 3, sideSize / 3);
-        g.fillRect(sideSize / 3 * 2, 0, sideSize / 3, sideSize / 3);
-        g.fillRect(sideSize / 3 * 2, sideSize / 3 * 2, sideSize / 3, sideSize / 3);
-        g.fillRect(sideSize / 3, sideSize / 3, sideSize / 3, sideSize / 3);
-        g.fillRect(0, sideSize / 3 * 2, sideSize / 3, sideSize / 3);
+        for (int i = 0; i < units.size; i++) {
+            if ((i / units.boxSize + i % units.boxSize) % 2 == 0) {
+                g.fillRect(square * (i % units.boxSize), square * (i / units.boxSize), square, square);
+            }
+        }
 
         // wrong value highlight
         if (showHints) {
@@ -89,8 +95,8 @@ public class SudokuDrawingPanel extends JPanel {
             g.setColor(Color.pink);
             for (int i = 0; i < wrongFields.size(); i++) {
                 pos = (Integer) wrongFields.get(i);
-                x = pos / 9;
-                y = pos % 9;
+                x = units.colOf[pos];
+                y = units.rowOf[pos];
                 g.fillRect(boxSize * x, boxSize * y, boxSize, boxSize);
             }
         }
@@ -102,7 +108,7 @@ public class SudokuDrawingPanel extends JPanel {
         }
 
         // mouse highlighted field
-        if (hx > -1 && hy < 9) {
+        if (hx > -1 && hy < units.size) {
             g.setColor(Color.getHSBColor(60, 38, 100));
             g.fillRect(boxSize * hx, boxSize * hy, boxSize, boxSize);
         }
@@ -110,14 +116,11 @@ public class SudokuDrawingPanel extends JPanel {
         g.setColor(Color.black);
 
         // border
-        g.fillRect(0, 0, sideSize, 3);
-        g.fillRect(0, sideSize / 3, sideSize, 3);
-        g.fillRect(0, (sideSize / 3) * 2, sideSize, 3);
+        for (int w = 0; w < units.boxSize; w++) {
+            g.fillRect(0, square * w, sideSize, 3);
+            g.fillRect(square * w, 0, 3, sideSize);
+        }
         g.fillRect(0, sideSize - 3, sideSize, 3);
-
-        g.fillRect(0, 0, 3, sideSize);
-        g.fillRect(sideSize / 3, 0, 3, sideSize);
-        g.fillRect((sideSize / 3) * 2, 0, 3, sideSize);
         g.fillRect(sideSize - 3, 0, 3, sideSize);
 
         // control border
@@ -133,8 +136,8 @@ public class SudokuDrawingPanel extends JPanel {
         g.fillRect(0, bottom, sideSize, 3);
 
         // grid
-        for (int w = 0; w < 9; w++) {
-            if (w != 3 && w != 6) {
+        for (int w = 0; w < units.size; w++) {
+            if (w % units.boxSize != 0) {
                 g.drawLine(w * (boxSize), 0, w * (boxSize), sideSize);
                 g.drawLine(0, w * (boxSize), sideSize, w * (boxSize));
             }
@@ -146,30 +149,30 @@ public class SudokuDrawingPanel extends JPanel {
      * @param g 
      */
     private void drawControlBox(Graphics g) {
-        int y = boxSize * 11 - boxSize / 2;
-        int x = (int) (boxSize * 0.29);
+        int size = board.getUnits().size;
+        int y = boxSize * (size + 2) - boxSize / 2;
         // highlight for moving mouse and selected value
         int highlight = -1, selectedHighlight = -1;
-        if (hx > -1 && hy > 9) {
+        if (hx > -1 && hy > size) {
             // select number field
             highlight = hx;
         }
         if (selectedField != null) {
             if (previousSelectedField != selectedField) {
-                if (!selectedField.generated && selectedField.value > 0) {
-                    int tmpVal = selectedField.value;
-                    selectedField.value = 0;
-                    allowedNumbers = board.getAllowedNumbers(sx, sy).toArray();
-                    System.out.println("Get candidates for " + tmpVal + "(" + selectedField.position + " at " + highlight);
-                    selectedField.value = tmpVal;
+                if (!selectedField.isGenerated() && selectedField.getValue() > 0) {
+                    int tmpVal = selectedField.getValue();
+                    selectedField.setValue(0);
+                    allowedNumbers = board.getAllowedMask(sx, sy);
+                    System.out.println("Get candidates for " + tmpVal + "(" + selectedField.getPosition() + " at " + highlight);
+                    selectedField.setValue(tmpVal);
                     previousSelectedField = selectedField;
                 }
             }
-            if (selectedField.value > 0) {
-                selectedHighlight = selectedField.value - 1;
+            if (selectedField.getValue() > 0) {
+                selectedHighlight = selectedField.getValue() - 1;
             }
         }
-        for (int i = 0; i < 9; i++) {
+        for (int i = 0; i < size; i++) {
             if (sx >= 0 && isCandidate(i + 1)) {
                 if (i == highlight || i == selectedHighlight) {
                     g.setColor(Color.red);
@@ -179,7 +182,7 @@ public class SudokuDrawingPanel extends JPanel {
             } else {
                 g.setColor(Color.gray);
             }
-            g.drawString((i + 1) + "", boxSize * i + x, y);
+            g.drawString((i + 1) + "", boxSize * i + textOffset(g, i + 1), y);
         }
     }
 
@@ -189,13 +192,7 @@ public class SudokuDrawingPanel extends JPanel {
      * @return 
      */
     private boolean isCandidate(int number) {
-        int i;
-        for (i = 0; i < allowedNumbers.length; i++) {
-            if ((Integer) allowedNumbers[i] == number) {
-                return true;
-            }
-        }
-        return false;
+        return (allowedNumbers & SudokuField.candidateBit(number)) != 0;
     }
 
     /**
@@ -208,19 +205,28 @@ public class SudokuDrawingPanel extends JPanel {
         } else {
             g.setColor(Color.blue);
         }
-        g.drawString(number + "", boxSize * x + (int) (boxSize * 0.29), boxSize * (y + 1) - (int) (boxSize * 0.22));
+        g.drawString(number + "", boxSize * x + textOffset(g, number), boxSize * (y + 1) - (int) (boxSize * 0.22));
+    }
+
+    /**
+     * Left offset of the number centered in a box
+     */
+    private int textOffset(Graphics g, int number) {
+        return (boxSize - g.getFontMetrics().stringWidth(number + "")) / 2;
     }
 
     private void drawNumbers(Graphics g) {
         SudokuField field;
         int number;
-        g.setFont(new Font("Arial", 0, (int) (boxSize * 0.8)));
-        for (int i = 0; i < 9; i++) {
-            for (int j = 0; j < 9; j++) {
+        int size = board.getUnits().size;
+        // two digits have to fit into the box
+        g.setFont(new Font("Arial", 0, (int) (boxSize * (size > 9 ? 0.55 : 0.8))));
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
                 field = board.getValue(i, j);
-                number = field.value;
-                if (number > 0 && number < 10) {
-                    drawNumber(g, i, j, number, field.generated);
+                number = field.getValue();
+                if (number > 0 && number <= size) {
+                    drawNumber(g, i, j, number, field.isGenerated());
                 }
             }
         }
@@ -260,24 +266,24 @@ public class SudokuDrawingPanel extends JPanel {
             sx = x / boxSize;
             sy = y / boxSize;
             selectedField = board.getValue(sx, sy);
-            if (selectedField.generated) {
+            if (selectedField.isGenerated()) {
                 sx = -1;
                 sy = -1;
                 selectedField = null;
                 allowedNumbers = empty;
             } else {
-                allowedNumbers = board.getAllowedNumbers(sx, sy).toArray();
+                allowedNumbers = board.getAllowedMask(sx, sy);
             }
-        } else if (x < sideSize && hy > 9) {
+        } else if (x < sideSize && hy > board.getUnits().size) {
             // clicked control number
             clickedNumber = hx + 1;
             previousSelectedField = null;
             if (selectedField != null) {
-                if (!selectedField.generated) {
-                    if (clickedNumber == selectedField.value) {
-                        selectedField.value = 0;
+                if (!selectedField.isGenerated()) {
+                    if (clickedNumber == selectedField.getValue()) {
+                        selectedField.setValue(0);
                     } else {
-                        selectedField.value = clickedNumber;
+                        selectedField.setValue(clickedNumber);
                     }
                 }
             }
@@ -292,16 +298,16 @@ public class SudokuDrawingPanel extends JPanel {
 
     /**
      * When the key is pressed
-     * @param val number from 0 to 9
+     * @param val number from 0 to the size of the board
      */
     public void setSelectedValue(int val) {
         if (selectedField != null) {
             clickedNumber = val;
-            if (!selectedField.generated) {
-                if (clickedNumber == selectedField.value) {
-                    selectedField.value = 0;
+            if (!selectedField.isGenerated()) {
+                if (clickedNumber == selectedField.getValue()) {
+                    selectedField.setValue(0);
                 } else {
-                    selectedField.value = clickedNumber;
+                    selectedField.setValue(clickedNumber);
                 }
             }
         }
@@ -1,161 +1,171 @@
-
 package sudoku;
 
-import java.util.ArrayList;
-
 /**
- * Class represents a single field on the board
+ * Class represents a single field on the board. The field does not hold
+ * any data itself, it is only a view to one cell of the SudokuBoard.
  * @author Ondrej Nebesky
  */
 public class SudokuField {
-    int value;
-    ArrayList<Integer> candidates;
-    int position = 0;
-    boolean generated = true;
 
-    public SudokuField(){
-        candidates = new ArrayList<Integer>();
-        value = 0;
-    }
+    /**
+     * mask with all nine candidates of the classic board, bit (n - 1)
+     * stands for number n, see SudokuUnits.allCandidates for other sizes
+     */
+    public static final int ALL_CANDIDATES = 0x1FF;
+
+    private final SudokuBoard board;
+    private final int position;
 
     /**
      * Constructor
-     * @param i default value of the field
+     * @param board board holding the data
+     * @param position index of the cell on the board
      */
-    public SudokuField(int i){
-        candidates = new ArrayList<Integer>();
-        value = i;
-    }
-
-    public SudokuField(int i, int position){
-        candidates = new ArrayList<Integer>();
-        value = i;
+    public SudokuField(SudokuBoard board, int position){
+        this.board = board;
         this.position = position;
     }
 
-    public int getValue() {
-        return value;
+    /**
+     * Bit used for the number in candidate masks
+     * @param number from 1 to the size of the board
+     * @return
+     */
+    public static int candidateBit(int number) {
+        return 1 << (number - 1);
     }
 
-    public int getPosition() {
-        return position;
+    /**
+     * Lowest number contained in the candidate mask
+     * @param mask
+     * @return lowest number, 0 for empty mask
+     */
+    public static int firstCandidate(int mask) {
+        if (mask == 0) {
+            return 0;
+        }
+        return Integer.numberOfTrailingZeros(mask) + 1;
     }
 
-    public void setPosition(int position) {
-        this.position = position;
+    public int getValue() {
+        return board.getNumber(position);
     }
 
-
-
-    @Override
-    protected Object clone() throws CloneNotSupportedException {
-        SudokuField newField = new SudokuField(this.value, this.position);
-        newField.setCandidates((ArrayList<Integer>)candidates.clone());
-        return newField;
+    public int getPosition() {
+        return position;
     }
 
     @Override
     public boolean equals(Object obj) {
         if (obj.getClass() == this.getClass()){
-            if (this.value == ((SudokuField)obj).getValue()) return true;
+            if (this.getValue() == ((SudokuField)obj).getValue()) return true;
         }else{
-            if (this.value == ((Integer)obj).intValue()) return true;
+            if (this.getValue() == ((Integer)obj).intValue()) return true;
         }
         return false;
     }
 
+    @Override
+    public int hashCode() {
+        return getValue();
+    }
+
     public void setValue(int value) {
-        this.value = value;
-        removeCandidate(value);
+        board.setNumber(position, value);
+    }
+
+    /**
+     * Was the value of the field generated by the computer?
+     * @return
+     */
+    public boolean isGenerated() {
+        return board.isGenerated(position);
     }
 
     /**
      * Set possible values fillable in this field
-     * @param possibleValues 
+     * @param possibleValues mask of candidates
      */
-    public void setCandidates(ArrayList<Integer> possibleValues) {
-        this.candidates = possibleValues;
+    public void setCandidates(int possibleValues) {
+        board.setCandidates(position, possibleValues);
     }
 
     public void addCandidate(int candidate){
-        if (!containsCandidate(candidate)) candidates.add(candidate);
+        if (candidate > 0) setCandidates(getCandidates() | candidateBit(candidate));
     }
 
     /**
      * Removes an candidate from the possible values
-     * @param candidate 
+     * @param candidate
      */
     public void removeCandidate(int candidate){
-        for (int i = 0; i < candidates.size(); i++){
-            if (candidates.get(i) == candidate){
-                candidates.remove(i);
-                break;
-            }
-        }
+        board.removeCandidate(position, candidate);
     }
 
-    /** 
-     * Returns intersection of input and candidates for this field 
+    /**
+     * Returns intersection of input and candidates for this field
      */
-    public ArrayList<Integer> getMatchingCandidates(ArrayList<Integer> input){
-        ArrayList<Integer> output = new ArrayList();
-        for (int i = 0; i < input.size(); i++){
-            if (containsCandidate(input.get(i))){
-                output.add(input.get(i));
-            }
-        }
-        return output;
+    public int getMatchingCandidates(int input){
+        return getCandidates() & input;
     }
 
     public boolean containsCandidate(int candidate){
-        for (Integer i : candidates){
-            if (i == candidate){
-                return true;
-            }
-        }
-        return false;
+        return candidate > 0 && (getCandidates() & candidateBit(candidate)) != 0;
     }
 
     @Override
     public String toString() {
-        return value + "";
+        return getValue() + "";
     }
 
     /**
-     * Delete all the values
+     * Delete the value and all the candidates
      */
     public void clear(){
-        value = 0;
-        position = 0;
-        candidates.clear();
+        board.setNumber(position, 0);
+        board.setCandidates(position, 0);
     }
 
-    public boolean isInArayList(ArrayList<Integer> values){
-        for (Integer i : values){
-            if (i == this.value){
-                return true;
-            }
-        }
-        return false;
+    /**
+     * Is the value of this field contained in the mask?
+     * @param mask
+     * @return
+     */
+    public boolean isInMask(int mask){
+        int value = getValue();
+        return value > 0 && (mask & candidateBit(value)) != 0;
     }
 
     public boolean isEmpty(){
-        if (this.value == 0){
+        if (getValue() == 0){
             return true;
         }
         return false;
     }
 
-    public ArrayList<Integer> getCandidates() {
-        return candidates;
+    /**
+     * Candidates as a bit mask
+     * @return
+     */
+    public int getCandidates() {
+        return board.getCandidates(position);
     }
 
     public int getSizeOfCandidates(){
-        return candidates.size();
+        return Integer.bitCount(getCandidates());
     }
 
+    /**
+     * Returns candidate on given index, ordered from the lowest
+     * @param index
+     * @return
+     */
     public int getCandidate(int index){
-        return candidates.get(index);
+        int mask = getCandidates();
+        for (int i = 0; i < index; i++) {
+            mask &= mask - 1;
+        }
+        return firstCandidate(mask);
     }
 
 }
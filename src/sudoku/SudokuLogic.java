@@ -2,10 +2,18 @@
 package sudoku;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Contains a couple of methods used to solve the board.
+ * An instance keeps the state of the last generated board and must not be
+ * shared between threads, generateBatch() runs one instance per worker.
  * @author Ondrej Nebesky
  */
 public class SudokuLogic {
@@ -15,32 +23,109 @@ public class SudokuLogic {
     
     /** full board as it was computed at the first step */
     private SudokuBoard fullBoard;
+    /** geometry and rules of the generated boards, see SudokuConstraint */
+    private final SudokuUnits layout;
 
     private Random random;
+    /** non recursive generator of the full boards */
+    private FullGridGenerator gridGenerator;
+    /** transforms a pool of full boards into new ones */
+    private SolvedGridFactory gridFactory;
+    /** take the full boards from the factory instead of the generator */
+    private boolean useGridFactory = false;
+    /** complete solver used to check the puzzle has only one solution */
+    private SolverEngine solver;
+    /** numbers of the board passed to the solver */
+    private int[] solverGrid;
+    /** accept removals which keep the solution unique, rate only at the end */
+    private boolean uniquenessCheck = false;
+    /** preallocated board used to rate the puzzle */
+    private SudokuBoard ratingBoard;
+    /** candidate lines for the geometry of the last board */
+    private IntersectionEngine intersectionEngine;
+    /** naked and hidden subsets for the geometry of the last board */
+    private SubsetEngine subsetEngine;
+    private FishEngine fishEngine;
+    private WingEngine wingEngine;
+    private ChainEngine chainEngine;
+    /** killer cages for the geometry of the last board */
+    private CageEngine cageEngine;
+    /** all the techniques used to rate the puzzles */
+    private TechniqueScheduler scheduler;
+    /** ids of the singles in the scheduler */
+    private int singleCandidateTechnique, singlePositionTechnique;
+    /** next step for the player */
+    private HintEngine hintEngine;
     // temporary counter for measuring the performance
     private int tmpCounter = 0;
     private int genCounter = 0;
     int difficulty = 0;
     int targetDifficulty = 0;
-    String messages = "";
+    /** steps of the last solving, recorded only if tracing is on */
+    private SolveTrace trace = new SolveTrace();
+    /** steps of the last accepted removal in removeNumbersFromTheBoard */
+    private SolveTrace acceptedTrace = new SolveTrace();
+    private boolean tracing = true;
     long startTime, endTime = 0;
+    /**
+     * Difficulty given to puzzles which the solving techniques can't finish,
+     * they are counted as difficult, scaled for the bigger boards
+     */
+    public static final int UNSOLVED_DIFFICULTY = 400;
+    /** difficulty added for every unit changed by a subset of given size */
+    private static final int[] NAKED_SUBSET_WEIGHT = {0, 0, 9, 14, 20};
+    private static final int[] HIDDEN_SUBSET_WEIGHT = {0, 0, 12, 18, 26};
+    /** difficulty added for every X-Wing, Swordfish or Jellyfish */
+    private static final int[] FISH_WEIGHT = {0, 0, 40, 60, 80};
+    /** difficulty added for every XY-Wing and XYZ-Wing */
+    private static final int XY_WING_WEIGHT = 50;
+    private static final int XYZ_WING_WEIGHT = 60;
+    /** difficulty added for every chain which removed a candidate */
+    private static final int SIMPLE_COLORING_WEIGHT = 70;
+    private static final int X_CHAIN_WEIGHT = 80;
+    private static final int AIC_WEIGHT = 100;
+    /** time budget of a hint and of the chains used for it, in nanoseconds */
+    private static final long HINT_TIME_BUDGET = 500000L;
+    private static final long HINT_CHAIN_BUDGET = 200000L;
+
+    /** print progress of the generation to the standard output */
+    private boolean verbose = true;
 
     public SudokuLogic() {
-        board = new SudokuBoard();
+        this(SudokuUnits.STANDARD);
+    }
+
+    /**
+     * @param units geometry of the generated boards, the rules of a variant
+     * which depend on the solution (cages, even and odd cells) are created
+     * for every generated puzzle
+     */
+    public SudokuLogic(SudokuUnits units) {
+        layout = units;
+        board = new SudokuBoard(units);
         random = new Random();
     }
 
+    /**
+     * Geometry and rules the boards are generated with
+     * @return
+     */
+    public SudokuUnits getLayout() {
+        return layout;
+    }
+
     public SudokuBoard resetBoard() {
-        board = new SudokuBoard();
+        board = new SudokuBoard(layout);
         board.markGeneratedFields();
         fullBoard = null;
-        this.messages = "";
+        trace.clear();
         return board;
     }
 
     /**
      * Generate a board with given difficulty
-     * @param difficulty 0 - random, 1 - easy, 2 - medium, 3 - difficult
+     * @param difficulty 0 - random, 1 - easy, 2 - medium, 3 - difficult,
+     * 4 - expert (difficult, the chains may be needed)
      */
     public void generateSudoku(int difficulty) {
         this.difficulty = 0;
@@ -49,23 +134,41 @@ public class SudokuLogic {
         
         startTime = System.currentTimeMillis();
         while (this.difficulty == 0) {
-            System.out.println("Generating new sudoku board.");
+            if (verbose) {
+                System.out.println("Generating new sudoku board.");
+            }
+            if (board.getUnits() != layout) {
+                board = new SudokuBoard(layout);
+            }
             board.clear();
-            this.messages = "";
-            generateFullBoard(0);
-            fullBoard = board.clone();
-            removeNumbersFromTheBoard(board);
+            trace.clear();
+            // the transformations of the factory don't keep the variants
+            if (useGridFactory && layout.isPlain()) {
+                getGridFactory().fill(board);
+            } else if (!getGridGenerator().fill(board)) {
+                throw new IllegalStateException("The rules of the variant allow no solved board");
+            }
+            usePuzzleRules();
+            if (fullBoard == null || fullBoard.getUnits() != board.getUnits()) {
+                fullBoard = new SudokuBoard(board.getUnits());
+            }
+            board.copyTo(fullBoard);
+            if (uniquenessCheck) {
+                removeNumbersKeepingUniqueness(board);
+            } else {
+                removeNumbersFromTheBoard(board);
+            }
             if (difficulty == 1) {
                 // easy
-                if (this.difficulty < 200) {
+                if (this.difficulty < scaled(200, board.getUnits())) {
                     break;
                 }
             } else if (difficulty == 2) {
-                if (this.difficulty >= 200 && this.difficulty < 400) {
+                if (this.difficulty >= scaled(200, board.getUnits()) && this.difficulty < scaled(400, board.getUnits())) {
                     break;
                 }
-            } else if (difficulty == 3) {
-                if (this.difficulty >= 400) {
+            } else if (difficulty == 3 || difficulty == 4) {
+                if (this.difficulty >= scaled(400, board.getUnits())) {
                     break;
                 }
             } else {
@@ -74,7 +177,152 @@ public class SudokuLogic {
             this.difficulty = 0;
         }
         endTime = System.currentTimeMillis();
-        System.out.println(this.messages);
+        if (verbose) {
+            System.out.println(getMessages());
+        }
+    }
+
+    /**
+     * Move the full board to the tables with the rules given by its
+     * solution, e.g. the killer cages
+     */
+    private void usePuzzleRules() {
+        int[] solution = new int[layout.cells];
+        for (int i = 0; i < layout.cells; i++) {
+            solution[i] = board.getNumber(i);
+        }
+        SudokuUnits units = layout.forSolution(solution, random);
+        if (units != layout) {
+            board = new SudokuBoard(units);
+            for (int i = 0; i < units.cells; i++) {
+                board.setNumber(i, solution[i]);
+            }
+        }
+    }
+
+    /**
+     * Difficulty limit of the classic board for a board of other size,
+     * bigger boards need more steps for the same techniques
+     */
+    private static int scaled(int difficulty, SudokuUnits units) {
+        return difficulty * units.cells / SudokuUnits.STANDARD.cells;
+    }
+
+    /**
+     * Generate a board with given difficulty and return it as an immutable
+     * result, the board of this instance is overwritten
+     * @param difficulty 0 - random, 1 - easy, 2 - medium, 3 - difficult,
+     * 4 - expert (difficult, the chains may be needed)
+     * @return
+     */
+    public GeneratedPuzzle generatePuzzle(int difficulty) {
+        long start = System.nanoTime();
+        generateSudoku(difficulty);
+        return new GeneratedPuzzle(board, fullBoard, this.difficulty, System.nanoTime() - start);
+    }
+
+    /**
+     * Generate many puzzles in parallel. Every worker thread uses its own
+     * SudokuLogic, so nothing is shared between the threads.
+     * @param count number of puzzles
+     * @param difficulty 0 - random, 1 - easy, 2 - medium, 3 - difficult,
+     * 4 - expert (difficult, the chains may be needed)
+     * @param parallelism number of worker threads
+     * @return puzzles grouped by the worker which generated them, the
+     * workers in the order they were started
+     */
+    public static List<GeneratedPuzzle> generateBatch(int count, final int difficulty, int parallelism) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Number of puzzles can't be negative");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism has to be at least 1");
+        }
+        parallelism = Math.max(1, Math.min(parallelism, count));
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        List<Future<List<GeneratedPuzzle>>> parts = new ArrayList<Future<List<GeneratedPuzzle>>>();
+        try {
+            for (int worker = 0; worker < parallelism; worker++) {
+                // spread the rest of the division over the first workers
+                final int share = count / parallelism + (worker < count % parallelism ? 1 : 0);
+                parts.add(executor.submit(new Callable<List<GeneratedPuzzle>>() {
+
+                    public List<GeneratedPuzzle> call() {
+                        SudokuLogic logic = new SudokuLogic();
+                        logic.verbose = false;
+                        logic.tracing = false;
+                        List<GeneratedPuzzle> puzzles = new ArrayList<GeneratedPuzzle>(share);
+                        for (int i = 0; i < share; i++) {
+                            puzzles.add(logic.generatePuzzle(difficulty));
+                        }
+                        return puzzles;
+                    }
+                }));
+            }
+
+            List<GeneratedPuzzle> puzzles = new ArrayList<GeneratedPuzzle>(count);
+            for (Future<List<GeneratedPuzzle>> part : parts) {
+                puzzles.addAll(part.get());
+            }
+            return puzzles;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Generating of the puzzles was interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Generating of the puzzles failed", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    public boolean isTracing() {
+        return tracing;
+    }
+
+    /**
+     * Record the steps of the solving, see getTrace()
+     * @param tracing
+     */
+    public void setTracing(boolean tracing) {
+        this.tracing = tracing;
+    }
+
+    /**
+     * Steps used to solve the last puzzle, empty if tracing is off
+     * @return
+     */
+    public SolveTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Steps of the last solving as text
+     * @return
+     */
+    public String getMessages() {
+        if (!tracing) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder();
+        trace.render(out, getScheduler(), board.getUnits());
+        return out.toString();
+    }
+
+    /**
+     * Name of the hardest technique used by the last solving
+     * @return null if there is none or tracing is off
+     */
+    public String getHardestTechnique() {
+        int technique = trace.getHardestTechnique(getScheduler());
+        return technique < 0 ? null : getScheduler().getTechniqueName(technique);
     }
 
     /**
@@ -83,14 +331,10 @@ public class SudokuLogic {
      */
     public ArrayList getWrongGuess(){
         ArrayList wrongFields = new ArrayList();
-        int i, x, y;
-        SudokuField userField;
-        for (i = 0; i < 81; i ++){
-            x = i / 9;
-            y = i % 9;
-            userField = board.getValue(x, y);
-            if (!userField.generated && userField.value > 0){
-                if (fullBoard.getNumber(x, y) != userField.value){
+        int i;
+        for (i = 0; i < board.getUnits().cells; i ++){
+            if (!board.isGenerated(i) && board.getNumber(i) > 0){
+                if (fullBoard.getNumber(i) != board.getNumber(i)){
                     wrongFields.add(i);
                 }
             }
@@ -109,7 +353,9 @@ public class SudokuLogic {
     }
 
     /**
-     * Generate full board using brute force and recursion
+     * Generate full board using brute force and recursion.
+     * When the board records the trail, every failed number is undone by
+     * rolling back to the mark taken before it was placed.
      * @param pos
      * @return
      */
@@ -117,27 +363,30 @@ public class SudokuLogic {
 
         tmpCounter++;
 
-        int x = pos / 9;
-        int y = pos % 9;
+        SudokuUnits units = board.getUnits();
+        int x = pos / units.size;
+        int y = pos % units.size;
 
         // processing last number ... yay
-        if (pos == 81) {
+        if (pos == units.cells) {
             return true;
         }
 
         // index in possible values array
         int candidate;
 
-        ArrayList possibleVals = board.getAllowedNumbers(x, y);
-        if (possibleVals.isEmpty()) {
+        int possibleVals = board.getAllowedMask(x, y);
+        if (possibleVals == 0) {
             return false;
         }
 
+        int mark = board.mark();
+
         // go through all possible values and keep other for case that one further
         // iteration won't fit
-        while (!possibleVals.isEmpty()) {
-            candidate = randNum(possibleVals.size());
-            board.setNumber(x, y, ((Integer) possibleVals.get(candidate)));
+        while (possibleVals != 0) {
+            candidate = randomCandidate(possibleVals);
+            board.setNumber(x, y, candidate);
             if (board.isValid(x, y)) {
 
                 if (generateFullBoard(pos + 1)) {
@@ -146,13 +395,49 @@ public class SudokuLogic {
             }
             // this one didn't work (didn't produce the right board), so we
             // are going to discard it
-            possibleVals.remove(candidate);
+            board.rollbackTo(mark);
+            possibleVals &= ~SudokuField.candidateBit(candidate);
         }
         // no candidate found, return one step back
         board.setNumber(x, y, 0);
         return false;
     }
 
+    /**
+     * Generator of the full boards matching the geometry of the current board
+     * @return
+     */
+    public FullGridGenerator getGridGenerator() {
+        if (gridGenerator == null || gridGenerator.getUnits() != layout) {
+            gridGenerator = new FullGridGenerator(layout, random);
+        }
+        return gridGenerator;
+    }
+
+    /**
+     * Factory of the full boards matching the geometry of the current board
+     * @return
+     */
+    public SolvedGridFactory getGridFactory() {
+        if (gridFactory == null || gridFactory.getUnits() != layout) {
+            gridFactory = new SolvedGridFactory(getGridGenerator(), random);
+        }
+        return gridFactory;
+    }
+
+    public boolean isUseGridFactory() {
+        return useGridFactory;
+    }
+
+    /**
+     * Generate the full boards by transforming previously generated ones.
+     * This is much faster, but the boards are not independent.
+     * @param useGridFactory
+     */
+    public void setUseGridFactory(boolean useGridFactory) {
+        this.useGridFactory = useGridFactory;
+    }
+
     public SudokuBoard getBoard() {
         return board;
     }
@@ -167,16 +452,12 @@ public class SudokuLogic {
             solveTheBoard(board);
         }else{
             // just copy the values
-            int i = 0, x, y, computedField;
-            SudokuField userField;
-            for (i = 0; i < 81; i ++){
-                x = i / 9;
-                y = i % 9;
-                userField = board.getValue(x, y);
-                computedField = fullBoard.getNumber(x, y);
-                if (!userField.generated){
-                    if (computedField != userField.value){
-                        board.setNumber(x, y, computedField);
+            int i = 0, computedField;
+            for (i = 0; i < board.getUnits().cells; i ++){
+                computedField = fullBoard.getNumber(i);
+                if (!board.isGenerated(i)){
+                    if (computedField != board.getNumber(i)){
+                        board.setNumber(i, computedField);
                     }
                 }
             }
@@ -188,6 +469,19 @@ public class SudokuLogic {
         return random.nextInt(max);
     }
 
+    /**
+     * Pick a random number from the candidate mask
+     * @param mask non empty candidate mask
+     * @return
+     */
+    private int randomCandidate(int mask) {
+        int index = randNum(Integer.bitCount(mask));
+        for (int i = 0; i < index; i++) {
+            mask &= mask - 1;
+        }
+        return SudokuField.firstCandidate(mask);
+    }
+
     public void setBoard(SudokuBoard board) {
         this.board = board;
     }
@@ -197,52 +491,202 @@ public class SudokuLogic {
     }
 
     /**
-     * Remove numbers from the full board
+     * Remove numbers from the full board, difficulty is the rating of the
+     * returned puzzle.
+     * Every removal is tried on the board itself with the trail recording
+     * the changes, so rolling back costs only as much as the solver changed.
      * @param board
      */
     public void removeNumbersFromTheBoard(SudokuBoard board) {
-        int remove, removed;
+        SudokuUnits units = board.getUnits();
+        int remove;
         int x, y;
-        String oldMessages = messages;
+        int beforeRemoval, beforeSolving;
+        // rating of the last accepted removal, the failed ones overwrite difficulty
+        int acceptedDifficulty = 0;
+        SolveTrace swap;
+        acceptedTrace.clear();
 
         // create permutation
-        ArrayList<Integer> permutation = createShuffledArrayList();
+        int[] permutation = createShuffledPositions(units.cells);
 
-        SudokuBoard newBoard;
-        while (permutation.size() > 0) {
+        for (int p = 0; p < permutation.length; p++) {
 
-            // keep history of solving techniques
-            oldMessages = messages;
-            this.messages = "";
             genCounter++;
 
             // remove the number
             // check also if it is empty or not
-            remove = permutation.get(0);
-            permutation.remove(0);
+            remove = permutation[p];
 
-            x = remove / 9;
-            y = remove % 9;
-            removed = board.getNumber(x, y);
+            x = remove / units.size;
+            y = remove % units.size;
 
+            board.startTrail();
+            beforeRemoval = board.mark();
             board.setNumber(x, y, 0);
             board.updateAllowedNumbersEverywhere(x, y);
 
             // try to solve it
-            newBoard = board.clone();
+            beforeSolving = board.mark();
+            solveTheBoard(board);
 
-            solveTheBoard(newBoard);
+            if (board.isFullBoard()) {
+                // keep history of solving techniques
+                acceptedDifficulty = this.difficulty;
+                swap = acceptedTrace;
+                acceptedTrace = trace;
+                trace = swap;
+                board.rollbackTo(beforeSolving);
+            } else {
+                // we removed too much
+                board.rollbackTo(beforeRemoval);
+            }
+        }
+        swap = acceptedTrace;
+        acceptedTrace = trace;
+        trace = swap;
+        this.difficulty = acceptedDifficulty;
+        board.stopTrail();
+        board.markGeneratedFields();
+    }
 
-            // we removed too much
-            if (!newBoard.isFullBoard()) {
-                this.messages = oldMessages;
-                board.setNumber(x, y, removed);
-                board.updateAllowedNumbersEverywhere(x, y);
+    /**
+     * Remove numbers from the full board as long as the puzzle has only one
+     * solution. The puzzle is rated by the solving techniques only once at
+     * the end, puzzles they can't finish get at least UNSOLVED_DIFFICULTY (scaled).
+     * @param board
+     */
+    public void removeNumbersKeepingUniqueness(SudokuBoard board) {
+        SudokuUnits units = board.getUnits();
+        int[] grid = toSolverGrid(board);
+        int removed;
+
+        for (int position : createShuffledPositions(units.cells)) {
+            removed = grid[position];
+            grid[position] = 0;
+            if (getSolver().countSolutions(grid, 2) != 1) {
+                grid[position] = removed;
             }
         }
+
+        for (int i = 0; i < units.cells; i++) {
+            board.setNumber(i, grid[i]);
+        }
+        board.generateAllPossibleCandidates();
+        rateTheBoard(board);
         board.markGeneratedFields();
     }
 
+    /**
+     * Compute difficulty of the puzzle by solving its copy
+     * @param board puzzle with generated candidates
+     */
+    public void rateTheBoard(SudokuBoard board) {
+        if (ratingBoard == null || ratingBoard.getUnits() != board.getUnits()) {
+            ratingBoard = new SudokuBoard(board.getUnits());
+        }
+        board.copyTo(ratingBoard);
+        solveTheBoard(ratingBoard);
+        if (!ratingBoard.isFullBoard()) {
+            this.difficulty = Math.max(this.difficulty, scaled(UNSOLVED_DIFFICULTY, board.getUnits()));
+        }
+    }
+
+    /**
+     * Rate a puzzle which was not generated here, all the techniques may
+     * be used as for a random puzzle
+     * @param board numbers of the puzzle, the candidates are generated
+     * @return difficulty
+     */
+    public int ratePuzzle(SudokuBoard board) {
+        this.targetDifficulty = 4;
+        board.generateAllPossibleCandidates();
+        rateTheBoard(board);
+        return this.difficulty;
+    }
+
+    /**
+     * Count solutions of the board, the search stops at the limit, so
+     * countSolutions(board, 2) == 1 is a cheap uniqueness check
+     * @param board
+     * @param limit
+     * @return number of solutions, at most limit
+     */
+    public int countSolutions(SudokuBoard board, int limit) {
+        return getSolver().countSolutions(toSolverGrid(board), limit);
+    }
+
+    /**
+     * Solver matching the geometry of the current board, unless other engine
+     * was set it is BitboardSolver for the classic board and
+     * DancingLinksSolver for the others, the backtracking needs minutes
+     * for some 16x16 puzzles. Killer cages are not an exact cover, they
+     * are checked by the backtracking.
+     * @return
+     */
+    public SolverEngine getSolver() {
+        if (solver == null || solver.getUnits() != board.getUnits()) {
+            if (board.getUnits() == SudokuUnits.STANDARD) {
+                solver = new BitboardSolver();
+            } else if (board.getUnits().getCageCount() > 0) {
+                solver = new BacktrackingSolver(board.getUnits());
+            } else {
+                solver = new DancingLinksSolver(board.getUnits());
+            }
+        }
+        return solver;
+    }
+
+    /**
+     * Use other engine to count solutions and to verify the puzzles
+     * @param solver engine for the geometry of the board
+     */
+    public void setSolverEngine(SolverEngine solver) {
+        this.solver = solver;
+    }
+
+    /**
+     * Solve the board completely using the solver engine, the techniques are
+     * not used and the difficulty is not changed
+     * @param board
+     * @return false if the board has no solution
+     */
+    public boolean solveWithEngine(SudokuBoard board) {
+        int[] grid = toSolverGrid(board);
+        if (!getSolver().solve(grid)) {
+            return false;
+        }
+        for (int i = 0; i < grid.length; i++) {
+            board.setNumber(i, grid[i]);
+        }
+        return true;
+    }
+
+    private int[] toSolverGrid(SudokuBoard board) {
+        int cells = board.getUnits().cells;
+        if (solverGrid == null || solverGrid.length != cells) {
+            solverGrid = new int[cells];
+        }
+        for (int i = 0; i < cells; i++) {
+            solverGrid[i] = board.getNumber(i);
+        }
+        return solverGrid;
+    }
+
+    public boolean isUniquenessCheck() {
+        return uniquenessCheck;
+    }
+
+    /**
+     * Decide about removing the numbers by checking the solution stays
+     * unique instead of solving the board with the techniques. It gives
+     * puzzles with less numbers.
+     * @param uniquenessCheck
+     */
+    public void setUniquenessCheck(boolean uniquenessCheck) {
+        this.uniquenessCheck = uniquenessCheck;
+    }
+
     /**
      * Create permutation of the list swapping single indexes
      * @param list
@@ -251,12 +695,13 @@ public class SudokuLogic {
         ArrayList<Integer> list = new ArrayList();
         int a, b, c;
         Random rand = new Random();
-        for (int i = 0; i < 81; i++) {
+        int cells = board.getUnits().cells;
+        for (int i = 0; i < cells; i++) {
             list.add(i);
         }
-        for (int i = 0; i < 81; i++) {
-            a = rand.nextInt(81);
-            b = rand.nextInt(81);
+        for (int i = 0; i < cells; i++) {
+            a = rand.nextInt(cells);
+            b = rand.nextInt(cells);
             c = list.get(a);
             list.set(a, list.get(b));
             list.set(b, c);
@@ -265,69 +710,147 @@ public class SudokuLogic {
     }
 
     /**
-     * Return difficulty of the puzzle
-     * right now, it returns one if there is at least one solution
-     * and zero for no solutions
-     * @param board
+     * Create random permutation of all the positions on the board
      * @return
      */
-    public void solveTheBoard(SudokuBoard board) {
-        //if (tmpCounter > 72){
-        boolean solved = false;
-        boolean change = true;
-
-        this.difficulty = 0;
-
-        int filledFields = board.getNumberOfIndicies();
-        int filledAfterSolving = 0;
+    public int[] createShuffledPositions() {
+        return createShuffledPositions(board.getUnits().cells);
+    }
 
-        boolean changed = true;
+    private int[] createShuffledPositions(int cells) {
+        int[] positions = new int[cells];
+        int a, c;
+        for (int i = 0; i < cells; i++) {
+            positions[i] = i;
+        }
+        for (int i = cells - 1; i > 0; i--) {
+            a = random.nextInt(i + 1);
+            c = positions[a];
+            positions[a] = positions[i];
+            positions[i] = c;
+        }
+        return positions;
+    }
 
-        // difficulty grows only if there is a change
-        while (changed == true && !solved) {
-            // easy level
+    /**
+     * Rate the puzzle by solving it with the techniques allowed for the
+     * target difficulty, see getScheduler()
+     * @param board
+     */
+    public void solveTheBoard(SudokuBoard board) {
+        trace.clear();
+        this.difficulty = getScheduler().solve(board, this.targetDifficulty, tracing ? trace : null);
+    }
 
-            change = solveSingeCandidate(board);
-            if (change) {
-                this.messages += "Solving using single candidate (" + this.difficulty + ") \n";
+    /**
+     * Scheduler with all the techniques, the levels follow the target
+     * difficulty: singles are always used, candidate lines from medium,
+     * subsets, fish and wings from difficult and the chains from expert.
+     * The costs are first estimates, the scheduler measures them later.
+     * @return
+     */
+    public TechniqueScheduler getScheduler() {
+        if (scheduler != null) {
+            return scheduler;
+        }
+        scheduler = new TechniqueScheduler();
+        singleCandidateTechnique = scheduler.register("single candidate", 0, 1, 2000, new SolvingTechnique() {
+            public int apply(SudokuBoard board) {
+                return board.fillSingleCandidates();
             }
-
-            change = solveSinglePosition(board);
-            if (change) {
-                this.messages += "Solving using single position (" + this.difficulty + ") \n";
+        });
+        singlePositionTechnique = scheduler.register("single position", 0, 1, 3000, new SolvingTechnique() {
+            public int apply(SudokuBoard board) {
+                return board.fillHiddenSingles();
             }
-
-            if (this.targetDifficulty > 1) {
-                change = solveCandidateLines(board);
-                if (change) {
-                    this.messages += "Solving using candidate lines (" + this.difficulty + ") \n";
+        });
+        // +9 for every square with a candidate line
+        scheduler.register("candidate lines", 2, 9, 5000, new SolvingTechnique() {
+            public int apply(SudokuBoard board) {
+                return getIntersectionEngine(board).solve(board);
+            }
+        });
+        String[] subsetNames = {null, null, "pairs", "triples", "quads"};
+        for (int size = 2; size <= SubsetEngine.MAX_SIZE; size++) {
+            final int subsetSize = size;
+            scheduler.register("naked " + subsetNames[size], 3, NAKED_SUBSET_WEIGHT[size], 4000 * size, new SolvingTechnique() {
+                public int apply(SudokuBoard board) {
+                    return getSubsetEngine(board).solveNaked(board, subsetSize);
                 }
-
-                if (this.targetDifficulty > 2) {
-                    change = solveNakedPairs(board);
-                    if (change) {
-                        this.messages += "Solving using naked pairs (" + this.difficulty + ") \n";
-                    }
-
-                    change = solveHiddenPairs(board);
-                    if (change) {
-                        this.messages += "Solving using hidden pairs (" + this.difficulty + ") \n";
-                    }
+            });
+            scheduler.register("hidden " + subsetNames[size], 3, HIDDEN_SUBSET_WEIGHT[size], 5000 * size, new SolvingTechnique() {
+                public int apply(SudokuBoard board) {
+                    return getSubsetEngine(board).solveHidden(board, subsetSize);
+                }
+            });
+        }
+        String[] fishNames = {null, null, "X-Wing", "Swordfish", "Jellyfish"};
+        for (int size = 2; size <= FishEngine.MAX_SIZE; size++) {
+            final int fishSize = size;
+            scheduler.register(fishNames[size], 3, FISH_WEIGHT[size], 6000 * size, new SolvingTechnique() {
+                public int apply(SudokuBoard board) {
+                    return getFishEngine(board).solve(board, fishSize);
                 }
+            });
+        }
+        scheduler.register("XY-Wing", 3, XY_WING_WEIGHT, 20000, new SolvingTechnique() {
+            public int apply(SudokuBoard board) {
+                return getWingEngine(board).solveXYWing(board);
             }
-
-            solved = board.isFullBoard();
-
-            filledAfterSolving = board.getNumberOfIndicies();
-            if (filledFields == filledAfterSolving || solved) {
-                changed = false;
-            } else {
-                filledFields = filledAfterSolving;
+        });
+        scheduler.register("XYZ-Wing", 3, XYZ_WING_WEIGHT, 25000, new SolvingTechnique() {
+            public int apply(SudokuBoard board) {
+                return getWingEngine(board).solveXYZWing(board);
             }
-        }
-
-        this.messages += "Difficulty of the puzzle: " + this.difficulty + "\n";
+        });
+        scheduler.register("simple coloring", 4, SIMPLE_COLORING_WEIGHT, 50000, new SolvingTechnique() {
+            public int apply(SudokuBoard board) {
+                return getChainEngine(board).solveSimpleColoring(board);
+            }
+        });
+        scheduler.register("X-Chains", 4, X_CHAIN_WEIGHT, 200000, new SolvingTechnique() {
+            public int apply(SudokuBoard board) {
+                return getChainEngine(board).solveXChains(board);
+            }
+        });
+        scheduler.register("alternating inference chains", 4, AIC_WEIGHT, 500000, new SolvingTechnique() {
+            public int apply(SudokuBoard board) {
+                return getChainEngine(board).solveAIC(board);
+            }
+        });
+        // only killer cages, level 1 so that the hints use it too
+        scheduler.register("cage combinations", 1, 2, 4000, new SolvingTechnique() {
+            public int apply(SudokuBoard board) {
+                return getCageEngine(board).solve(board);
+            }
+        });
+        return scheduler;
+    }
 
+    /**
+     * The easiest number the player can place now. Only the numbers of the
+     * board are used, the candidates follow from them, so the board can be
+     * the one the player is filling. The search is stopped after half of
+     * a millisecond, so it can run after every key, the next call continues
+     * where it stopped.
+     * @param board
+     * @return null if the board is full, no technique can find anything or
+     * the time is over
+     */
+    public Hint nextHint(SudokuBoard board) {
+        if (hintEngine == null || hintEngine.getUnits() != board.getUnits()) {
+            // registers the techniques and their ids
+            TechniqueScheduler techniques = getScheduler();
+            hintEngine = new HintEngine(board.getUnits(), techniques, singleCandidateTechnique, singlePositionTechnique);
+        }
+        ChainEngine chains = getChainEngine(board);
+        long budget = chains.getTimeBudget();
+        chains.setTimeBudget(HINT_CHAIN_BUDGET);
+        try {
+            return hintEngine.nextHint(board, 4, HINT_TIME_BUDGET);
+        } finally {
+            chains.setTimeBudget(budget);
+        }
     }
 
     public boolean fillMissingNumbers() {
@@ -336,71 +859,25 @@ public class SudokuLogic {
     }
 
     /**
-     * Fills the field if there is only one candidate
+     * Fills the field if there is only one candidate, the board propagates
+     * the placed numbers only to the peers (see fillSingleCandidates)
      */
     public boolean solveSingeCandidate(SudokuBoard board) {
-        int origDifficulty = this.difficulty;
-        boolean change = false;
-        int current = 0;
-        int x, y;
-
-
-        while (true) {
-
-            x = current / 9;
-            y = current % 9;
-            if (board.checkCandidates(x, y)) {
-                this.difficulty++;
-                change = true;
-            }
-            current++;
-            if (current == 81) {
-                if (!change) {
-                    break;
-                }
-                change = false;
-                current = 0;
-            }
-        }
-        if (origDifficulty == this.difficulty) {
-            return false;
-        } else {
-            return true;
-        }
+        int filled = board.fillSingleCandidates();
+        this.difficulty += filled;
+        return filled > 0;
     }
 
     /**
-     * Find if there is only position for the candidate
+     * Find if there is only position for the candidate in a row, column or
+     * square (see fillHiddenSingles)
      * @param board
-     * @return true if board is full
+     * @return true if a field was filled
      */
     public boolean solveSinglePosition(SudokuBoard board) {
-        int origDifficulty = this.difficulty;
-        boolean change = false;
-        int current = 0;
-        int x, y;
-        while (true) {
-
-            x = current / 9;
-            y = current % 9;
-            if (board.findSinglePosition(x, y)) {
-                change = true;
-                this.difficulty++;
-            }
-            current++;
-            if (current == 81) {
-                if (!change) {
-                    break;
-                }
-                change = false;
-                current = 0;
-            }
-        }
-        if (origDifficulty == this.difficulty) {
-            return false;
-        } else {
-            return true;
-        }
+        int filled = board.fillHiddenSingles();
+        this.difficulty += filled;
+        return filled > 0;
     }
 
     /**
@@ -410,72 +887,132 @@ public class SudokuLogic {
      * @return
      */
     public boolean solveCandidateLines(SudokuBoard board) {
-        int origDifficulty = this.difficulty;
-        boolean change = false;
-
-        // detect squares
-        for (int i = 0; i < 9; i += 3) {
-            for (int j = 0; j < 9; j += 3) {
-                change = board.solveCandidateLinesInSquare(i, j);
-                // solving for square 9x9
-                if (change) {
-                    this.difficulty += 9;
-                }
-            }
+        // +9 for every square with a candidate line, as before
+        IntersectionEngine engine = getIntersectionEngine(board);
+        this.difficulty += engine.solve(board) * 9;
+        return engine.getRemoved() > 0;
+    }
+
+    public boolean solveNakedPairs(SudokuBoard board) {
+        return solveNakedSubsets(board, 2);
+    }
+
+    public boolean solveHiddenPairs(SudokuBoard board) {
+        return solveHiddenSubsets(board, 2);
+    }
+
+    /**
+     * Naked pairs, triples or quads in all the units, the difficulty grows
+     * for every unit where a candidate was removed
+     * @param board
+     * @param size 2 - 4
+     * @return
+     */
+    public boolean solveNakedSubsets(SudokuBoard board, int size) {
+        int changedUnits = getSubsetEngine(board).solveNaked(board, size);
+        this.difficulty += changedUnits * NAKED_SUBSET_WEIGHT[size];
+        return changedUnits > 0;
+    }
+
+    /**
+     * Hidden pairs, triples or quads in all the units
+     * @param board
+     * @param size 2 - 4
+     * @return
+     */
+    public boolean solveHiddenSubsets(SudokuBoard board, int size) {
+        int changedUnits = getSubsetEngine(board).solveHidden(board, size);
+        this.difficulty += changedUnits * HIDDEN_SUBSET_WEIGHT[size];
+        return changedUnits > 0;
+    }
+
+    private IntersectionEngine getIntersectionEngine(SudokuBoard board) {
+        if (intersectionEngine == null || intersectionEngine.getUnits() != board.getUnits()) {
+            intersectionEngine = new IntersectionEngine(board.getUnits());
         }
-        if (origDifficulty == this.difficulty) {
-            return false;
-        } else {
-            return true;
+        return intersectionEngine;
+    }
+
+    private SubsetEngine getSubsetEngine(SudokuBoard board) {
+        if (subsetEngine == null || subsetEngine.getUnits() != board.getUnits()) {
+            subsetEngine = new SubsetEngine(board.getUnits());
         }
+        return subsetEngine;
     }
 
-    public boolean solveNakedPairs(SudokuBoard board) {
-        int origDifficulty = this.difficulty;
-        // detect squares
-        for (int i = 0; i < 9; i++) {
-            if (board.solveNakedPairsRow(i)) {
-                this.difficulty += 9;
-            }
-            if (board.solveNakedPairsCol(i)) {
-                this.difficulty += 9;
-            }
+    /**
+     * X-Wing (2), Swordfish (3) or Jellyfish (4) for all the numbers
+     * @param board
+     * @param size 2 - 4
+     * @return
+     */
+    public boolean solveFish(SudokuBoard board, int size) {
+        int found = getFishEngine(board).solve(board, size);
+        this.difficulty += found * FISH_WEIGHT[size];
+        return found > 0;
+    }
+
+    private FishEngine getFishEngine(SudokuBoard board) {
+        if (fishEngine == null || fishEngine.getUnits() != board.getUnits()) {
+            fishEngine = new FishEngine(board.getUnits());
         }
-        if (origDifficulty == this.difficulty) {
-            return false;
-        } else {
-            return true;
+        return fishEngine;
+    }
+
+    public boolean solveXYWing(SudokuBoard board) {
+        int found = getWingEngine(board).solveXYWing(board);
+        this.difficulty += found * XY_WING_WEIGHT;
+        return found > 0;
+    }
+
+    public boolean solveXYZWing(SudokuBoard board) {
+        int found = getWingEngine(board).solveXYZWing(board);
+        this.difficulty += found * XYZ_WING_WEIGHT;
+        return found > 0;
+    }
+
+    private WingEngine getWingEngine(SudokuBoard board) {
+        if (wingEngine == null || wingEngine.getUnits() != board.getUnits()) {
+            wingEngine = new WingEngine(board.getUnits());
         }
+        return wingEngine;
     }
 
-    public boolean solveHiddenPairs(SudokuBoard board) {
-        int origDifficulty = this.difficulty;
-        ArrayList<SudokuField> fieldsRow;
-        ArrayList<SudokuField> fieldsCol;
-
-        // rows
-        for (int i = 0; i < 9; i++) {
-            fieldsRow = new ArrayList();
-            fieldsCol = new ArrayList();
-            for (int j = 0; j < 9; j++) {
-                // get fiels in row and col
-                if (board.getNumber(i, j) == 0) {
-                    fieldsCol.add(board.getValue(i, j));
-                }
-                if (board.getNumber(j, i) == 0) {
-                    fieldsRow.add(board.getValue(j, i));
-                }
-            }
-            if (board.findHiddenPairs(fieldsRow) || board.findHiddenPairs(fieldsCol)) {
-                this.difficulty += 12;
-            }
+    public boolean solveSimpleColoring(SudokuBoard board) {
+        int found = getChainEngine(board).solveSimpleColoring(board);
+        this.difficulty += found * SIMPLE_COLORING_WEIGHT;
+        return found > 0;
+    }
+
+    public boolean solveXChains(SudokuBoard board) {
+        int found = getChainEngine(board).solveXChains(board);
+        this.difficulty += found * X_CHAIN_WEIGHT;
+        return found > 0;
+    }
 
+    public boolean solveAIC(SudokuBoard board) {
+        int found = getChainEngine(board).solveAIC(board);
+        this.difficulty += found * AIC_WEIGHT;
+        return found > 0;
+    }
+
+    private CageEngine getCageEngine(SudokuBoard board) {
+        if (cageEngine == null || cageEngine.getUnits() != board.getUnits()) {
+            cageEngine = new CageEngine(board.getUnits());
         }
+        return cageEngine;
+    }
 
-        if (origDifficulty == this.difficulty) {
-            return false;
-        } else {
-            return true;
+    /**
+     * Chain techniques for the geometry of the board, the maximum length of
+     * the chains and the time budget can be set on it
+     * @param board
+     * @return
+     */
+    public ChainEngine getChainEngine(SudokuBoard board) {
+        if (chainEngine == null || chainEngine.getUnits() != board.getUnits()) {
+            chainEngine = new ChainEngine(board.getUnits());
         }
+        return chainEngine;
     }
 }
@@ -4,6 +4,7 @@ package sudoku;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.util.ArrayList;
+import java.util.Random;
 
 /**
  * Simple tests used to simulate different situations to solve the board
@@ -59,7 +60,7 @@ public class SudokuTests {
         for (int i = 0; i < watchCandidates.size(); i++) {
             debugSquare(watchCandidates.get(i));
         }
-        board.solveCandidateLinesInSquare(6, 6);
+        logic.solveCandidateLines(board);
         for (int i = 0; i < watchCandidates.size(); i++) {
             debugSquare(watchCandidates.get(i));
         }
@@ -84,10 +85,10 @@ public class SudokuTests {
         System.out.println("Field: " + x + " " + y);
         int val = board.getValue(x, y).getValue();
         if (val == 0) {
-            ArrayList<Integer> candidates = board.getValue(x, y).getCandidates();
+            SudokuField field = board.getValue(x, y);
             String candidatesString = "";
-            for (int i = 0; i < candidates.size(); i++) {
-                candidatesString += candidates.get(i) + ", ";
+            for (int i = 0; i < field.getSizeOfCandidates(); i++) {
+                candidatesString += field.getCandidate(i) + ", ";
             }
             System.out.println("Candidates: " + candidatesString);
         } else {
@@ -124,7 +125,7 @@ public class SudokuTests {
         for (int i = 0; i < watchCandidates.size(); i++) {
             debugSquare(watchCandidates.get(i));
         }
-        board.solveNakedPairsRow(8);
+        logic.solveNakedPairs(board);
         for (int i = 0; i < watchCandidates.size(); i++) {
             debugSquare(watchCandidates.get(i));
         }
@@ -184,4 +185,176 @@ public class SudokuTests {
             System.err.println("Error: " + e.getMessage());
         }
     }
+
+    /**
+     * Compare the recursive and the iterative generator of full boards
+     * @param count number of boards generated by each of them
+     */
+    public void benchmarkFullBoardGenerators(int count) {
+        SudokuBoard fullBoard = new SudokuBoard();
+        FullGridGenerator generator = new FullGridGenerator(new Random());
+        long start;
+
+        logic.setBoard(fullBoard);
+        start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            fullBoard.clear();
+            fullBoard.startTrail();
+            logic.generateFullBoard(0);
+            fullBoard.stopTrail();
+        }
+        System.out.println("Recursive generator: " + (System.nanoTime() - start) / count + " ns per board");
+
+        start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            generator.fill(fullBoard);
+        }
+        System.out.println("Iterative generator: " + (System.nanoTime() - start) / count + " ns per board");
+
+        int[] grid = new int[81];
+        start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            generator.generate(grid);
+        }
+        System.out.println("Iterative generator without board: " + (System.nanoTime() - start) / count + " ns per grid");
+    }
+
+    /**
+     * Measure the transformation based factory of full boards
+     * @param count number of boards
+     */
+    public void benchmarkGridFactory(int count) {
+        SolvedGridFactory factory = new SolvedGridFactory(new FullGridGenerator(new Random()), new Random());
+        int[] grid = new int[81];
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            factory.generate(grid);
+        }
+        System.out.println("Grid factory: " + (System.nanoTime() - start) / count + " ns per grid");
+    }
+
+    /**
+     * Play generated puzzles using only the hints and measure how long
+     * they take
+     * @param count number of puzzles
+     * @param difficulty of the puzzles
+     */
+    public void benchmarkHints(int count, int difficulty) {
+        SudokuLogic hintLogic = new SudokuLogic();
+        hintLogic.setVerbose(false);
+        long time = 0, slowest = 0, start, duration;
+        int hints = 0, wrong = 0;
+        Hint hint;
+        for (int i = 0; i < count; i++) {
+            GeneratedPuzzle puzzle = hintLogic.generatePuzzle(difficulty);
+            SudokuBoard player = puzzle.toBoard();
+            while (!player.isFullBoard()) {
+                start = System.nanoTime();
+                hint = hintLogic.nextHint(player);
+                duration = System.nanoTime() - start;
+                time += duration;
+                slowest = Math.max(slowest, duration);
+                hints++;
+                if (hint == null || hint.getType() != Hint.PLACEMENT) {
+                    break;
+                }
+                if (puzzle.getSolution(hint.getPosition()) != hint.getNumber()) {
+                    wrong++;
+                }
+                player.setNumber(hint.getPosition(), hint.getNumber());
+            }
+        }
+        System.out.println("Hints: " + time / Math.max(1, hints) + " ns per hint, slowest " + slowest / 1000
+                + " us, " + wrong + " wrong of " + hints);
+    }
+
+    /**
+     * Rate generated puzzles again and count those with a different
+     * difficulty than the generator gave them
+     * @param count number of puzzles
+     * @param difficulty of the puzzles
+     */
+    public void checkGeneratedRatings(int count, int difficulty) {
+        SudokuLogic generator = new SudokuLogic();
+        SudokuLogic rater = new SudokuLogic();
+        generator.setVerbose(false);
+        rater.setVerbose(false);
+        // the time budget would make the ratings depend on the machine
+        generator.getChainEngine(generator.getBoard()).setTimeBudget(0);
+        rater.getChainEngine(rater.getBoard()).setTimeBudget(0);
+        int wrong = 0, rating;
+        for (int i = 0; i < count; i++) {
+            GeneratedPuzzle puzzle = generator.generatePuzzle(difficulty);
+            rating = rater.ratePuzzle(puzzle.toBoard());
+            if (rating != puzzle.getDifficulty()) {
+                System.out.println("Generated " + puzzle.getDifficulty() + ", rated " + rating + ":");
+                System.out.println(puzzle);
+                wrong++;
+            }
+        }
+        System.out.println("Ratings: " + wrong + " wrong of " + count);
+    }
+
+    /**
+     * Check that the solving techniques never remove the solution. A few
+     * more numbers are removed from generated puzzles, so the boards need
+     * not be unique, the solution must stay a candidate after every step.
+     * @param layout rules of the boards, SudokuUnits.STANDARD for classic
+     * @param count number of boards
+     * @param removed numbers removed from every puzzle
+     */
+    public void checkTechniques(SudokuUnits layout, int count, int removed) {
+        SudokuLogic checkLogic = new SudokuLogic(layout);
+        checkLogic.setVerbose(false);
+        checkLogic.setTracing(false);
+        TechniqueScheduler scheduler = checkLogic.getScheduler();
+        int[] steps = new int[scheduler.getTechniqueCount()];
+        int[] wrong = new int[steps.length];
+        Random random = new Random();
+        int id, position;
+        for (int i = 0; i < count; i++) {
+            GeneratedPuzzle puzzle = checkLogic.generatePuzzle(0);
+            SudokuUnits units = puzzle.getUnits();
+            SudokuBoard check = new SudokuBoard(units);
+            for (position = 0; position < units.cells; position++) {
+                check.setNumber(position, puzzle.getNumber(position));
+            }
+            for (int left = Math.min(removed, check.getNumberOfIndicies()); left > 0; ) {
+                position = random.nextInt(units.cells);
+                if (check.getNumber(position) != 0) {
+                    check.setNumber(position, 0);
+                    left--;
+                }
+            }
+            check.generateAllPossibleCandidates();
+            while (!check.isFullBoard()) {
+                id = scheduler.step(check, 0, 4);
+                if (id < 0) {
+                    break;
+                }
+                steps[id]++;
+                if (!keepsSolution(check, puzzle)) {
+                    wrong[id]++;
+                    break;
+                }
+            }
+        }
+        for (id = 0; id < steps.length; id++) {
+            if (steps[id] > 0) {
+                System.out.println(scheduler.getTechniqueName(id) + ": " + wrong[id] + " wrong of " + steps[id] + " steps");
+            }
+        }
+    }
+
+    private boolean keepsSolution(SudokuBoard check, GeneratedPuzzle puzzle) {
+        int number;
+        for (int i = 0; i < puzzle.getUnits().cells; i++) {
+            number = puzzle.getSolution(i);
+            if (check.getNumber(i) == 0 ? (check.getCandidates(i) & SudokuField.candidateBit(number)) == 0
+                    : check.getNumber(i) != number) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
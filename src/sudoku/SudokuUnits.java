@@ -0,0 +1,426 @@
+package sudoku;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Precomputed tables describing the geometry of the board. Cells are
+ * indexed as y * size + x, where x is the column and y the row, from 0 to
+ * 80 on the classic board. Units are numbered rows first (0 - 8), then
+ * columns (9 - 17) and squares (18 - 26). Boards of 4x4 up to 25x25 cells
+ * are supported, the candidate masks are ints.
+ * Variants add their rules as data (see SudokuConstraint): jigsaw regions
+ * take the place of the squares, extra units such as the diagonals follow
+ * them, so every cell may be in more than three units. Killer cages are
+ * not units, a number doesn't have to be in them, but the cells of a cage
+ * are peers and the cage keeps the combinations of numbers giving its sum.
+ * Numbers allowed in the cells (even and odd cells) are kept as masks.
+ * @author Ondrej Nebesky
+ */
+public class SudokuUnits {
+
+    /** tables for the classic 9x9 board */
+    public static final SudokuUnits STANDARD = new SudokuUnits(3);
+    /** the biggest box for which the candidates fit into an int */
+    public static final int MAX_BOX_SIZE = 5;
+    /** shared tables for every box size, see get() */
+    private static final SudokuUnits[] SHARED = new SudokuUnits[MAX_BOX_SIZE + 1];
+
+    /** side of a single square */
+    final int boxSize;
+    /** side of the board, also the highest number */
+    final int size;
+    /** number of cells on the board */
+    final int cells;
+    /** mask containing all the numbers */
+    final int allCandidates;
+
+    /** cells of every unit, rows, columns, squares and the extra units */
+    final int[][] units;
+    /** units every cell belongs to, row, column and square first */
+    final int[][] cellUnits;
+    /** all the cells sharing a unit or a cage with the cell, without the cell itself */
+    final int[][] peers;
+    /** peers of every cell as bits, peerWords longs per cell, see isPeer() */
+    private final long[] peerBits;
+    private final int peerWords;
+    /** index of the cell inside each of its units */
+    final int[][] unitIndex;
+
+    final int[] rowOf;
+    final int[] colOf;
+    /** square or jigsaw region of the cell */
+    final int[] boxOf;
+
+    /** rules of the variant, empty for the classic board */
+    private final SudokuConstraint[] constraints;
+    /** numbers allowed in every cell */
+    final int[] cellMasks;
+    /** cells of every killer cage */
+    final int[][] cages;
+    final int[] cageSums;
+    /** cage of every cell, -1 for none */
+    final int[] cageOf;
+    /** masks of the numbers which give the sum of the cage */
+    final int[][] cageCombinations;
+    /** only rows, columns and squares without any other rule */
+    final boolean plain;
+
+    /**
+     * Build the tables for a board made of boxSize x boxSize squares
+     * @param boxSize 2 - MAX_BOX_SIZE
+     */
+    public SudokuUnits(int boxSize) {
+        this(boxSize, new SudokuConstraint[0]);
+    }
+
+    /**
+     * Build the tables for a variant
+     * @param boxSize 2 - MAX_BOX_SIZE
+     * @param constraints rules added to rows, columns and squares
+     */
+    public SudokuUnits(int boxSize, SudokuConstraint... constraints) {
+        if (boxSize < 2 || boxSize > MAX_BOX_SIZE) {
+            throw new IllegalArgumentException("Box size has to be from 2 to " + MAX_BOX_SIZE);
+        }
+        this.boxSize = boxSize;
+        this.size = boxSize * boxSize;
+        this.cells = size * size;
+        this.allCandidates = (1 << size) - 1;
+        this.constraints = constraints.clone();
+
+        VariantLayout layout = new VariantLayout(boxSize);
+        for (SudokuConstraint constraint : constraints) {
+            constraint.addTo(layout);
+        }
+        int extra = layout.extraUnits.size();
+
+        units = new int[3 * size + extra][];
+        rowOf = new int[cells];
+        colOf = new int[cells];
+        boxOf = new int[cells];
+
+        int x, y, pos;
+        int[] count = new int[cells];
+        for (pos = 0; pos < cells; pos++) {
+            x = pos % size;
+            y = pos / size;
+            rowOf[pos] = y;
+            colOf[pos] = x;
+            boxOf[pos] = layout.regions == null ? (y / boxSize) * boxSize + x / boxSize : layout.regions[pos];
+        }
+        int[] filled = new int[3 * size];
+        for (int u = 0; u < 3 * size; u++) {
+            units[u] = new int[size];
+        }
+        for (pos = 0; pos < cells; pos++) {
+            units[rowOf[pos]][filled[rowOf[pos]]++] = pos;
+            units[size + colOf[pos]][filled[size + colOf[pos]]++] = pos;
+            units[2 * size + boxOf[pos]][filled[2 * size + boxOf[pos]]++] = pos;
+        }
+        for (int u = 0; u < extra; u++) {
+            units[3 * size + u] = layout.extraUnits.get(u);
+        }
+
+        // units of the cells in the order of the units
+        for (int[] unit : units) {
+            for (int cell : unit) {
+                count[cell]++;
+            }
+        }
+        cellUnits = new int[cells][];
+        unitIndex = new int[cells][];
+        for (pos = 0; pos < cells; pos++) {
+            cellUnits[pos] = new int[count[pos]];
+            unitIndex[pos] = new int[count[pos]];
+            count[pos] = 0;
+        }
+        for (int u = 0; u < units.length; u++) {
+            for (int i = 0; i < units[u].length; i++) {
+                pos = units[u][i];
+                unitIndex[pos][count[pos]] = i;
+                cellUnits[pos][count[pos]++] = u;
+            }
+        }
+
+        cellMasks = layout.cellMasks;
+        cages = layout.cages.toArray(new int[layout.cages.size()][]);
+        cageSums = new int[cages.length];
+        cageOf = new int[cells];
+        cageCombinations = new int[cages.length][];
+        Arrays.fill(cageOf, -1);
+        for (int c = 0; c < cages.length; c++) {
+            cageSums[c] = layout.cageSums.get(c);
+            for (int cell : cages[c]) {
+                if (cageOf[cell] >= 0) {
+                    throw new IllegalArgumentException("Cell " + cell + " is in two cages");
+                }
+                cageOf[cell] = c;
+            }
+            cageCombinations[c] = createCageCombinations(cages[c].length, cageSums[c]);
+            if (cageCombinations[c].length == 0) {
+                throw new IllegalArgumentException("No numbers give the sum " + cageSums[c] + " in "
+                        + cages[c].length + " cells");
+            }
+        }
+        boolean restricted = false;
+        for (int mask : cellMasks) {
+            restricted |= mask != allCandidates;
+        }
+        plain = layout.regions == null && extra == 0 && cages.length == 0 && !restricted;
+
+        // peers, every cell only once
+        peers = new int[cells][];
+        boolean[] seen = new boolean[cells];
+        int[] found = new int[cells];
+        int peerCount;
+        for (pos = 0; pos < cells; pos++) {
+            peerCount = 0;
+            for (int u : cellUnits[pos]) {
+                for (int other : units[u]) {
+                    if (other != pos && !seen[other]) {
+                        seen[other] = true;
+                        found[peerCount++] = other;
+                    }
+                }
+            }
+            if (cageOf[pos] >= 0) {
+                for (int other : cages[cageOf[pos]]) {
+                    if (other != pos && !seen[other]) {
+                        seen[other] = true;
+                        found[peerCount++] = other;
+                    }
+                }
+            }
+            peers[pos] = new int[peerCount];
+            for (int i = 0; i < peerCount; i++) {
+                peers[pos][i] = found[i];
+                seen[found[i]] = false;
+            }
+        }
+        peerWords = (cells + 63) / 64;
+        peerBits = new long[cells * peerWords];
+        for (pos = 0; pos < cells; pos++) {
+            for (int peer : peers[pos]) {
+                peerBits[pos * peerWords + (peer >>> 6)] |= 1L << peer;
+            }
+        }
+    }
+
+    /**
+     * Masks of count different numbers with the sum
+     */
+    private int[] createCageCombinations(int count, int sum) {
+        int[] result = new int[16];
+        int found = 0;
+        // numbers chosen so far in increasing order, as a stack
+        int[] stack = new int[count + 1];
+        int depth = 0, total = 0, mask = 0;
+        stack[0] = 0;
+        while (depth >= 0) {
+            stack[depth]++;
+            if (depth == count || stack[depth] > size || total + stack[depth] > sum) {
+                // go back, the numbers only grow
+                depth--;
+                if (depth >= 0) {
+                    total -= stack[depth];
+                    mask &= ~SudokuField.candidateBit(stack[depth]);
+                }
+                continue;
+            }
+            total += stack[depth];
+            mask |= SudokuField.candidateBit(stack[depth]);
+            if (depth == count - 1) {
+                if (total == sum) {
+                    if (found == result.length) {
+                        result = Arrays.copyOf(result, found * 2);
+                    }
+                    result[found++] = mask;
+                }
+                total -= stack[depth];
+                mask &= ~SudokuField.candidateBit(stack[depth]);
+            } else {
+                depth++;
+                stack[depth] = stack[depth - 1];
+            }
+        }
+        return Arrays.copyOf(result, found);
+    }
+
+    /**
+     * Shared tables for the box size, the engines and boards compare the
+     * geometry by identity, so they should be created using this method
+     * @param boxSize 2 - MAX_BOX_SIZE, 3 for the classic board
+     * @return
+     */
+    public static synchronized SudokuUnits get(int boxSize) {
+        if (boxSize == 3) {
+            return STANDARD;
+        }
+        if (boxSize < 2 || boxSize > MAX_BOX_SIZE) {
+            throw new IllegalArgumentException("Box size has to be from 2 to " + MAX_BOX_SIZE);
+        }
+        if (SHARED[boxSize] == null) {
+            SHARED[boxSize] = new SudokuUnits(boxSize);
+        }
+        return SHARED[boxSize];
+    }
+
+    /**
+     * Index of the cell at given coordinates
+     * @param x column
+     * @param y row
+     * @return
+     */
+    public int index(int x, int y) {
+        return y * size + x;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getBoxSize() {
+        return boxSize;
+    }
+
+    public int getCells() {
+        return cells;
+    }
+
+    /**
+     * Tables for a puzzle generated from the solution, the rules given by
+     * the solution (cages, even and odd cells) get their data
+     * @param solution full grid generated with these tables
+     * @param random
+     * @return this if no rule depends on the solution
+     */
+    public SudokuUnits forSolution(int[] solution, Random random) {
+        SudokuConstraint[] derived = new SudokuConstraint[constraints.length];
+        boolean changed = false;
+        for (int i = 0; i < constraints.length; i++) {
+            derived[i] = constraints[i].forSolution(this, solution, random);
+            changed |= derived[i] != constraints[i];
+        }
+        return changed ? new SudokuUnits(boxSize, derived) : this;
+    }
+
+    /**
+     * Numbers which can still be placed into the cage
+     * @param cage
+     * @param placed mask of the numbers already in the cage
+     * @return mask of the numbers, 0 if no combination contains the placed
+     * numbers
+     */
+    int cageAllowed(int cage, int placed) {
+        int allowed = 0;
+        for (int combination : cageCombinations[cage]) {
+            if ((combination & placed) == placed) {
+                allowed |= combination;
+            }
+        }
+        return allowed & ~placed;
+    }
+
+    /**
+     * Apply the rules of the variant to the numbers allowed in an empty
+     * cell by its row, column and square, used by the solvers which keep
+     * their own masks
+     * @param cell
+     * @param mask allowed by the first three units of the cell
+     * @param unitMasks numbers used in every unit
+     * @param grid numbers of the cells, 0 for empty
+     * @return
+     */
+    int applyRules(int cell, int mask, int[] unitMasks, int[] grid) {
+        int[] units = cellUnits[cell];
+        for (int u = 3; u < units.length; u++) {
+            mask &= ~unitMasks[units[u]];
+        }
+        mask &= cellMasks[cell];
+        int cage = cageOf[cell];
+        if (cage >= 0) {
+            int placed = 0;
+            for (int other : cages[cage]) {
+                if (grid[other] > 0) {
+                    placed |= SudokuField.candidateBit(grid[other]);
+                }
+            }
+            mask &= cageAllowed(cage, placed);
+        }
+        return mask;
+    }
+
+    /**
+     * Cells share a unit or a killer cage, so they can't have the same
+     * number
+     * @param a
+     * @param b
+     * @return false for the same cell
+     */
+    public boolean isPeer(int a, int b) {
+        return (peerBits[a * peerWords + (b >>> 6)] & (1L << b)) != 0;
+    }
+
+    /**
+     * Rules of the variant, empty for the classic board
+     * @return
+     */
+    public SudokuConstraint[] getConstraints() {
+        return constraints.clone();
+    }
+
+    /**
+     * Only rows, columns and squares
+     * @return
+     */
+    public boolean isPlain() {
+        return plain;
+    }
+
+    /**
+     * Square or jigsaw region of the cell
+     * @param cell
+     * @return
+     */
+    public int getRegion(int cell) {
+        return boxOf[cell];
+    }
+
+    /**
+     * Cell is in a unit added by a rule, e.g. on a diagonal
+     * @param cell
+     * @return
+     */
+    public boolean isInExtraUnit(int cell) {
+        return cellUnits[cell].length > 3;
+    }
+
+    /**
+     * @param cell
+     * @return mask of the numbers allowed in the cell by the rules
+     */
+    public int getCellMask(int cell) {
+        return cellMasks[cell];
+    }
+
+    public int getCageCount() {
+        return cages.length;
+    }
+
+    public int[] getCage(int cage) {
+        return cages[cage].clone();
+    }
+
+    public int getCageSum(int cage) {
+        return cageSums[cage];
+    }
+
+    /**
+     * @param cell
+     * @return cage of the cell, -1 for none
+     */
+    public int getCageOf(int cell) {
+        return cageOf[cell];
+    }
+}
@@ -358,7 +358,12 @@ public final class SudokuView extends FrameView {
     }//GEN-LAST:event_drawingPanelMousePressed
 
     private void drawingPanelKeyPressed(java.awt.event.KeyEvent evt) {//GEN-FIRST:event_drawingPanelKeyPressed
-        // TODO add your handling code here:
+        if (evt.getKeyChar() == 'h') {
+            // show the next step in the status bar
+            Hint hint = logic.nextHint(board);
+            statusMessageLabel.setText(hint == null ? "No hint found, try again." : hint.toString());
+            return;
+        }
         int i = Character.getNumericValue(evt.getKeyChar());
         ((SudokuDrawingPanel) drawingPanel).setSelectedValue(i);
         drawingPanel.validate();
@@ -393,7 +398,10 @@ public final class SudokuView extends FrameView {
                 difficulty = 3;
             }
             logic.generateSudoku(difficulty);
-            statusMessageLabel.setText("Difficulty of the puzzle is " + logic.getDifficulty() + ". Generating the puzzle took " + logic.getDurationInMilis() + " ms.");
+            String hardest = logic.getHardestTechnique();
+            statusMessageLabel.setText("Difficulty of the puzzle is " + logic.getDifficulty()
+                    + (hardest == null ? "" : ", the hardest step is " + hardest)
+                    + ". Generating the puzzle took " + logic.getDurationInMilis() + " ms.");
             return null;  // return your result
         }
 
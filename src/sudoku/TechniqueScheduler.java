@@ -0,0 +1,232 @@
+package sudoku;
+
+/**
+ * Runs the registered solving techniques on a board until it is solved or
+ * none of them can do anything more. After every progress it starts again
+ * with the cheapest technique, the costlier ones are used only when all
+ * the cheaper ones stalled.
+ * Every technique has a level (the lowest target difficulty which may use
+ * it), a weight added to the difficulty for every use and a cost, which
+ * starts as an estimate and follows the measured time of the calls. The
+ * techniques are ordered by the level and by the cost inside the level, so
+ * an easier puzzle is never rated with a harder technique.
+ * By default the costs stay at the estimates and the order is the same in
+ * every run, so the ratings are reproducible. setAdaptive(true) lets the
+ * order of techniques of the same level follow the measured time, which
+ * is faster but which technique of a level gets the credit may then
+ * differ between runs.
+ * @author Ondrej Nebesky
+ */
+public class TechniqueScheduler {
+
+    /** the measured time goes into the cost with weight 1 / 2^COST_SHIFT */
+    private static final int COST_SHIFT = 3;
+
+    private static class Registered {
+        /** index of the registration, used in the SolveTrace */
+        int id;
+        String name;
+        int level;
+        int weight;
+        /** average time of one call in nanoseconds */
+        long cost;
+        long calls;
+        long uses;
+        SolvingTechnique technique;
+    }
+
+    /** order by the measured cost instead of the estimate */
+    private boolean adaptive = false;
+    /** techniques in the order they are tried */
+    private Registered[] order = new Registered[0];
+    /** techniques in the order of registration */
+    private Registered[] byId = new Registered[0];
+    /** techniques by the level and the weight, easiest first */
+    private Registered[] byDifficulty = new Registered[0];
+
+    /**
+     * @param name used in the messages
+     * @param level lowest target difficulty which may use the technique
+     * @param weight difficulty added for every use
+     * @param estimatedCost nanoseconds per call until it is measured
+     * @param technique
+     * @return id of the technique
+     */
+    public int register(String name, int level, int weight, long estimatedCost, SolvingTechnique technique) {
+        Registered registered = new Registered();
+        registered.id = byId.length;
+        registered.name = name;
+        registered.level = level;
+        registered.weight = weight;
+        registered.cost = estimatedCost;
+        registered.technique = technique;
+
+        Registered[] bigger = new Registered[order.length + 1];
+        System.arraycopy(order, 0, bigger, 0, order.length);
+        bigger[order.length] = registered;
+        order = bigger;
+        sort();
+
+        bigger = new Registered[byId.length + 1];
+        System.arraycopy(byId, 0, bigger, 0, byId.length);
+        bigger[byId.length] = registered;
+        byId = bigger;
+
+        bigger = new Registered[byDifficulty.length + 1];
+        int i = byDifficulty.length;
+        while (i > 0 && (byDifficulty[i - 1].level > level
+                || (byDifficulty[i - 1].level == level && byDifficulty[i - 1].weight > weight))) {
+            bigger[i] = byDifficulty[i - 1];
+            i--;
+        }
+        System.arraycopy(byDifficulty, 0, bigger, 0, i);
+        bigger[i] = registered;
+        byDifficulty = bigger;
+        return registered.id;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * @param adaptive true to order the techniques by the measured cost,
+     * false to keep the estimates
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public int getTechniqueCount() {
+        return byId.length;
+    }
+
+    public String getTechniqueName(int id) {
+        return byId[id].name;
+    }
+
+    public int getTechniqueLevel(int id) {
+        return byId[id].level;
+    }
+
+    public int getTechniqueWeight(int id) {
+        return byId[id].weight;
+    }
+
+    /**
+     * Solve the board with the techniques up to the level
+     * @param board
+     * @param level
+     * @param trace receives a step for every technique which made progress,
+     * null for no tracing
+     * @return difficulty of the steps done
+     */
+    public int solve(SudokuBoard board, int level, SolveTrace trace) {
+        int difficulty = 0;
+        int i = 0;
+        int before, uses, placements = 0, eliminations = 0;
+        long start;
+        Registered registered;
+        while (i < order.length) {
+            registered = order[i];
+            if (registered.level > level) {
+                i++;
+                continue;
+            }
+            before = board.getModificationCount();
+            if (trace != null) {
+                placements = board.getPlacementCount();
+                eliminations = board.getEliminationCount();
+            }
+            start = System.nanoTime();
+            uses = registered.technique.apply(board);
+            if (adaptive) {
+                registered.cost += (System.nanoTime() - start - registered.cost) >> COST_SHIFT;
+            }
+            registered.calls++;
+            registered.uses += uses;
+            // candidate lines count even without a removal
+            difficulty += uses * registered.weight;
+
+            if (board.getModificationCount() == before) {
+                // stalled, try the next costlier one
+                i++;
+                continue;
+            }
+            if (trace != null) {
+                trace.record(registered.id, board.getLastChangedPosition(), board.getLastChangedNumber(),
+                        board.getPlacementCount() - placements, board.getEliminationCount() - eliminations,
+                        difficulty);
+            }
+            if (board.isFullBoard()) {
+                break;
+            }
+            i = 0;
+        }
+        sort();
+        if (trace != null) {
+            trace.setDifficulty(difficulty);
+        }
+        return difficulty;
+    }
+
+    /**
+     * Apply the easiest technique of the levels which changes the board,
+     * the techniques are ordered by the level and the weight, not by the
+     * cost
+     * @param board
+     * @param minLevel
+     * @param maxLevel
+     * @return id of the technique, -1 if none of them changed the board
+     */
+    public int step(SudokuBoard board, int minLevel, int maxLevel) {
+        int before;
+        for (Registered registered : byDifficulty) {
+            if (registered.level < minLevel || registered.level > maxLevel) {
+                continue;
+            }
+            before = board.getModificationCount();
+            registered.technique.apply(board);
+            if (board.getModificationCount() != before) {
+                return registered.id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Insertion sort by the level and the cost, the list is short and almost
+     * sorted
+     */
+    private void sort() {
+        Registered current;
+        int j;
+        for (int i = 1; i < order.length; i++) {
+            current = order[i];
+            j = i - 1;
+            while (j >= 0 && (order[j].level > current.level
+                    || (order[j].level == current.level && order[j].cost > current.cost))) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = current;
+        }
+    }
+
+    /**
+     * Techniques in the current order with the measured costs
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (Registered registered : order) {
+            result.append(registered.name)
+                    .append(" level ").append(registered.level)
+                    .append(" weight ").append(registered.weight)
+                    .append(" cost ").append(registered.cost).append(" ns")
+                    .append(" calls ").append(registered.calls)
+                    .append(" uses ").append(registered.uses).append('\n');
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,116 @@
+package sudoku;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects the data of the rules of a variant before SudokuUnits builds
+ * its tables, see SudokuConstraint.
+ * @author Ondrej Nebesky
+ */
+public class VariantLayout {
+
+    /** biggest killer cage, the combinations of bigger ones would be too many */
+    public static final int MAX_CAGE_CELLS = 9;
+
+    final int boxSize;
+    final int size;
+    final int cells;
+    /** region of every cell replacing the squares, null for the squares */
+    int[] regions;
+    /** units added to rows, columns and squares */
+    final List<int[]> extraUnits = new ArrayList<int[]>();
+    final List<int[]> cages = new ArrayList<int[]>();
+    final List<Integer> cageSums = new ArrayList<Integer>();
+    /** numbers allowed in every cell */
+    final int[] cellMasks;
+
+    VariantLayout(int boxSize) {
+        this.boxSize = boxSize;
+        this.size = boxSize * boxSize;
+        this.cells = size * size;
+        cellMasks = new int[cells];
+        Arrays.fill(cellMasks, (1 << size) - 1);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getBoxSize() {
+        return boxSize;
+    }
+
+    /**
+     * Replace the squares by irregular regions (jigsaw)
+     * @param regions region of every cell from 0 to size - 1, every region
+     * has size cells
+     */
+    public void setRegions(int[] regions) {
+        if (regions.length != cells) {
+            throw new IllegalArgumentException("Region needed for every cell");
+        }
+        int[] count = new int[size];
+        for (int region : regions) {
+            if (region < 0 || region >= size) {
+                throw new IllegalArgumentException("Region " + region + " out of range");
+            }
+            count[region]++;
+        }
+        for (int region = 0; region < size; region++) {
+            if (count[region] != size) {
+                throw new IllegalArgumentException("Region " + region + " has " + count[region] + " cells");
+            }
+        }
+        this.regions = regions.clone();
+    }
+
+    /**
+     * Add a unit where every number has to be exactly once
+     * @param unit size cells
+     */
+    public void addUnit(int[] unit) {
+        if (unit.length != size) {
+            throw new IllegalArgumentException("Unit has to have " + size + " cells");
+        }
+        checkCells(unit);
+        extraUnits.add(unit.clone());
+    }
+
+    /**
+     * Add a killer cage, the numbers in it are different and give the sum
+     * @param cage cells of the cage
+     * @param sum
+     */
+    public void addCage(int[] cage, int sum) {
+        if (cage.length == 0 || cage.length > Math.min(size, MAX_CAGE_CELLS)) {
+            throw new IllegalArgumentException("Cage has to have 1 to " + Math.min(size, MAX_CAGE_CELLS) + " cells");
+        }
+        checkCells(cage);
+        cages.add(cage.clone());
+        cageSums.add(sum);
+    }
+
+    /**
+     * Allow only some numbers in the cell
+     * @param cell
+     * @param mask candidate mask of the allowed numbers
+     */
+    public void restrict(int cell, int mask) {
+        cellMasks[cell] &= mask;
+    }
+
+    private void checkCells(int[] group) {
+        for (int i = 0; i < group.length; i++) {
+            if (group[i] < 0 || group[i] >= cells) {
+                throw new IllegalArgumentException("Cell " + group[i] + " out of the board");
+            }
+            for (int j = 0; j < i; j++) {
+                if (group[i] == group[j]) {
+                    throw new IllegalArgumentException("Cell " + group[i] + " used twice");
+                }
+            }
+        }
+    }
+}
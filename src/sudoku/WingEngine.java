@@ -0,0 +1,114 @@
+package sudoku;
+
+/**
+ * XY-Wing and XYZ-Wing. A pivot cell and two pincers which see the pivot
+ * share a number z in such way that one of the pincers has to be z, so
+ * z is removed from all the cells which see both pincers (and the pivot
+ * for XYZ-Wing, which has z itself).
+ * - XY-Wing: pivot xy, pincers xz and yz
+ * - XYZ-Wing: pivot xyz, pincers xz and yz
+ * @author Ondrej Nebesky
+ */
+public class WingEngine {
+
+    private final SudokuUnits units;
+
+    public WingEngine(SudokuUnits units) {
+        this.units = units;
+    }
+
+    public SudokuUnits getUnits() {
+        return units;
+    }
+
+    /**
+     * @param board
+     * @return number of wings which removed a candidate
+     */
+    public int solveXYWing(SudokuBoard board) {
+        return solve(board, 2);
+    }
+
+    /**
+     * @param board
+     * @return number of wings which removed a candidate
+     */
+    public int solveXYZWing(SudokuBoard board) {
+        return solve(board, 3);
+    }
+
+    /**
+     * Search all the pivots with pivotSize candidates
+     */
+    private int solve(SudokuBoard board, int pivotSize) {
+        int found = 0;
+        int pivotMask, first, second, z;
+        int[] peers;
+        for (int pivot = 0; pivot < units.cells; pivot++) {
+            pivotMask = candidates(board, pivot);
+            if (Integer.bitCount(pivotMask) != pivotSize) {
+                continue;
+            }
+            peers = units.peers[pivot];
+            for (int i = 0; i < peers.length; i++) {
+                first = candidates(board, peers[i]);
+                if (!isPincer(pivotMask, first, pivotSize)) {
+                    continue;
+                }
+                for (int j = i + 1; j < peers.length; j++) {
+                    second = candidates(board, peers[j]);
+                    if (second == first || !isPincer(pivotMask, second, pivotSize)) {
+                        continue;
+                    }
+                    // XY-Wing pincers have to take different numbers of the pivot
+                    if (pivotSize == 2 && (first & pivotMask) == (second & pivotMask)) {
+                        continue;
+                    }
+                    // the number shared by the pincers
+                    z = first & second;
+                    if (Integer.bitCount(z) != 1) {
+                        continue;
+                    }
+                    if (removeSeenByAll(board, peers[i], peers[j], pivotSize == 3 ? pivot : -1, z)) {
+                        found++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Pincer has two candidates, for XY-Wing exactly one of them is in the
+     * pivot, for XYZ-Wing both of them
+     */
+    private boolean isPincer(int pivotMask, int mask, int pivotSize) {
+        if (Integer.bitCount(mask) != 2) {
+            return false;
+        }
+        if (pivotSize == 2) {
+            return Integer.bitCount(mask & pivotMask) == 1;
+        }
+        return (mask & ~pivotMask) == 0;
+    }
+
+    /**
+     * Remove the candidate from the cells which see both pincers and the
+     * pivot (if it is not -1)
+     */
+    private boolean removeSeenByAll(SudokuBoard board, int first, int second, int pivot, int bit) {
+        boolean removed = false;
+        for (int cell : units.peers[first]) {
+            if (cell != second && cell != pivot && (candidates(board, cell) & bit) != 0
+                    && units.isPeer(cell, second) && (pivot < 0 || units.isPeer(cell, pivot))) {
+                board.setCandidates(cell, board.getCandidates(cell) & ~bit);
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    private int candidates(SudokuBoard board, int position) {
+        return board.getNumber(position) == 0 ? board.getCandidates(position) : 0;
+    }
+}
@@ -0,0 +1,52 @@
+package sudoku;
+
+import java.util.Random;
+
+/**
+ * Small and fast xorshift generator of random numbers used in the inner
+ * loops of the generators. It is not thread safe, every generator keeps
+ * its own.
+ * @author Ondrej Nebesky
+ */
+final class XorShiftRandom {
+
+    private long seed;
+
+    XorShiftRandom(Random random) {
+        seed = random.nextLong() | 1L;
+    }
+
+    /**
+     * Random number from 0 to bound - 1
+     */
+    int nextInt(int bound) {
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        return (int) (((seed >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * Random bit of the non empty mask
+     */
+    int nextBit(int mask) {
+        int index = nextInt(Integer.bitCount(mask));
+        for (int i = 0; i < index; i++) {
+            mask &= mask - 1;
+        }
+        return mask & -mask;
+    }
+
+    /**
+     * Shuffle the array in place
+     */
+    void shuffle(int[] array, int from, int length) {
+        int j, c;
+        for (int i = length - 1; i > 0; i--) {
+            j = nextInt(i + 1);
+            c = array[from + i];
+            array[from + i] = array[from + j];
+            array[from + j] = c;
+        }
+    }
+}